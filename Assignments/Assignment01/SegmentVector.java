@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// A vector of ints outside the Java heap, either allocated off-heap or mapped from a file, for
+// vectors larger than the heap. sum and dot work on the memory in place, in parallel chunks like
+// Vector, and nothing is copied into the heap. Lengths and indices are longs, and dot adds up in
+// a long, so it does not overflow where Vector.dot would. The blocks between cancellation checks
+// are SIMD loops like VectorKernels, loading the lanes straight from the memory.
+//
+// Files hold the elements back to back as 4-byte little-endian ints. The memory is freed, or
+// unmapped, by close(); the vector must not be used afterwards.
+//
+// The foreign memory API is a preview in Java 21, compile and run with --enable-preview and
+// --add-modules jdk.incubator.vector. The segment loops are here and not in VectorKernels, which
+// would otherwise need the preview too.
+@SuppressWarnings("serial")
+public class SegmentVector implements AutoCloseable {
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final ValueLayout.OfInt ELEMENT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ORDER);
+
+    private static final VectorSpecies<Integer> SPECIES = VectorKernels.SPECIES;
+    // dot multiplies in longs: ints are loaded half as many lanes at a time as the widest long
+    // vector has, and widened into it
+    private static final VectorSpecies<Long> LONG_SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> HALF_SPECIES =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(LONG_SPECIES.vectorBitSize() / 2));
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final long length;
+
+    private SegmentVector(Arena arena, MemorySegment segment) {
+        this.arena = arena;
+        this.segment = segment;
+        this.length = segment.byteSize() / ELEMENT.byteSize();
+    }
+
+    // A vector of zeros in off-heap memory
+    public static SegmentVector allocate(long length) {
+        // Shared, the chunks are used by pool threads
+        Arena arena = Arena.ofShared();
+        return new SegmentVector(arena, arena.allocate(length * ELEMENT.byteSize(), ELEMENT.byteSize()));
+    }
+
+    // An off-heap copy of elements
+    public static SegmentVector of(int[] elements) {
+        SegmentVector vector = allocate(elements.length);
+        MemorySegment.copy(elements, 0, vector.segment, ELEMENT, 0, elements.length);
+        return vector;
+    }
+
+    // The vector stored in file, mapped read-only or for reading and writing
+    public static SegmentVector map(Path file, boolean writable) throws IOException {
+        try (FileChannel channel = writable
+                ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ)) {
+            return map(channel, writable, channel.size() / ELEMENT.byteSize());
+        }
+    }
+
+    // A new file holding length zeros, mapped for reading and writing
+    public static SegmentVector create(Path file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return map(channel, true, length);
+        }
+    }
+
+    private static SegmentVector map(FileChannel channel, boolean writable, long length) throws IOException {
+        Arena arena = Arena.ofShared();
+        try {
+            // The mapping stays valid after the channel is closed
+            MemorySegment segment = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    0, length * ELEMENT.byteSize(), arena);
+            return new SegmentVector(arena, segment);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public int get(long index) {
+        return segment.getAtIndex(ELEMENT, index);
+    }
+
+    public void set(long index, int value) {
+        segment.setAtIndex(ELEMENT, index, value);
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private static class SumHelper extends RecursiveAction {
+        private final MemorySegment left;
+        private final MemorySegment right;
+        private final MemorySegment result;
+        private final long begin;
+        private final long end;
+
+        public SumHelper(MemorySegment left, MemorySegment right, MemorySegment result, long begin, long end) {
+            this.left = left;
+            this.right = right;
+            this.result = result;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            for (long block = begin; block < end; block += Vector.BLOCK_LENGTH) {
+                if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                add(left, right, result, block, Math.min(block + Vector.BLOCK_LENGTH, end));
+            }
+        }
+    }
+
+    private static class DotHelper extends RecursiveAction {
+        private final MemorySegment left;
+        private final MemorySegment right;
+        private final long begin;
+        private final long end;
+        private final long[] result;
+        private final int resultPosition;
+
+        public DotHelper(MemorySegment left, MemorySegment right, long begin, long end, long[] result, int resultPosition) {
+            this.left = left;
+            this.right = right;
+            this.begin = begin;
+            this.end = end;
+            this.result = result;
+            this.resultPosition = resultPosition;
+        }
+
+        @Override
+        protected void compute() {
+            long localResult = 0;
+            for (long block = begin; block < end; block += Vector.BLOCK_LENGTH) {
+                if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                localResult += dot(left, right, block, Math.min(block + Vector.BLOCK_LENGTH, end));
+            }
+
+            result[resultPosition] = localResult;
+        }
+    }
+
+    // result[i] = left[i] + right[i] for begin <= i < end
+    private static void add(MemorySegment left, MemorySegment right, MemorySegment result, long begin, long end) {
+        long i = begin;
+        long upper = begin + SPECIES.loopBound(end - begin);
+        for (; i < upper; i += SPECIES.length()) {
+            long offset = i * ELEMENT.byteSize();
+            IntVector l = IntVector.fromMemorySegment(SPECIES, left, offset, ORDER);
+            IntVector r = IntVector.fromMemorySegment(SPECIES, right, offset, ORDER);
+            l.add(r).intoMemorySegment(result, offset, ORDER);
+        }
+        for (; i < end; i++) {
+            result.setAtIndex(ELEMENT, i, left.getAtIndex(ELEMENT, i) + right.getAtIndex(ELEMENT, i));
+        }
+    }
+
+    // Sum of left[i] * right[i] for begin <= i < end, multiplied and added up in longs
+    private static long dot(MemorySegment left, MemorySegment right, long begin, long end) {
+        long i = begin;
+        long upper = begin + HALF_SPECIES.loopBound(end - begin);
+        LongVector sums = LongVector.zero(LONG_SPECIES);
+        for (; i < upper; i += HALF_SPECIES.length()) {
+            long offset = i * ELEMENT.byteSize();
+            LongVector l = (LongVector) IntVector.fromMemorySegment(HALF_SPECIES, left, offset, ORDER)
+                    .convertShape(VectorOperators.I2L, LONG_SPECIES, 0);
+            LongVector r = (LongVector) IntVector.fromMemorySegment(HALF_SPECIES, right, offset, ORDER)
+                    .convertShape(VectorOperators.I2L, LONG_SPECIES, 0);
+            sums = sums.add(l.mul(r));
+        }
+        long result = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < end; i++) {
+            result += (long) left.getAtIndex(ELEMENT, i) * right.getAtIndex(ELEMENT, i);
+        }
+        return result;
+    }
+
+    // A new off-heap vector holding this + v
+    public SegmentVector sum(SegmentVector v) throws InterruptedException {
+        SegmentVector result = allocate(length);
+        try {
+            sum(v, result);
+        } catch (InterruptedException | RuntimeException e) {
+            result.close();
+            throw e;
+        }
+        return result;
+    }
+
+    // Writes this + v into result, which may be a mapped file or one of the operands
+    public void sum(SegmentVector v, SegmentVector result) throws InterruptedException {
+        if (length != v.length || length != result.length) {
+            throw new IllegalArgumentException("Vector lengths differ.");
+        }
+        if (Vector.sequential(length)) {
+            new SumHelper(segment, v.segment, result.segment, 0, length).invoke();
+            Vector.throwIfInterrupted();
+            return;
+        }
+
+        long chunkLength = Vector.chunkLength(length);
+        List<Future<?>> chunks = new ArrayList<>();
+        for (long i = 0; i < length; i += chunkLength) {
+            long end = Math.min(i + chunkLength, length);
+            chunks.add(Vector.POOL.submit(new SumHelper(segment, v.segment, result.segment, i, end)));
+        }
+        Vector.awaitAll(chunks);
+    }
+
+    public long dot(SegmentVector v) throws InterruptedException {
+        if (length != v.length) {
+            throw new IllegalArgumentException("Vector lengths differ.");
+        }
+        if (Vector.sequential(length)) {
+            long[] result = new long[1];
+            new DotHelper(segment, v.segment, 0, length, result, 0).invoke();
+            Vector.throwIfInterrupted();
+            return result[0];
+        }
+
+        long chunkLength = Vector.chunkLength(length);
+        long[] partialResults = new long[Math.toIntExact(Math.ceilDiv(length, chunkLength))];
+        List<Future<?>> chunks = new ArrayList<>();
+        for (long i = 0; i < length; i += chunkLength) {
+            long end = Math.min(i + chunkLength, length);
+            chunks.add(Vector.POOL.submit(new DotHelper(segment, v.segment, i, end, partialResults, chunks.size())));
+        }
+        Vector.awaitAll(chunks);
+
+        long total = 0;
+        for (long n : partialResults) {
+            total += n;
+        }
+
+        return total;
+    }
+
+    // ----------------------- TESTS -----------------------
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(42);
+        try {
+            for (int length : new int[] { 33, 100_003 }) {
+                int[] a = random.ints(length, 0, 10).toArray();
+                int[] b = random.ints(length, 0, 10).toArray();
+                try (SegmentVector sa = SegmentVector.of(a);
+                     SegmentVector sb = SegmentVector.of(b);
+                     SegmentVector sc = sa.sum(sb)) {
+                    boolean sumOk = true;
+                    long dotSequential = 0;
+                    for (int i = 0; i < length; i++) {
+                        sumOk &= sc.get(i) == a[i] + b[i];
+                        dotSequential += (long) a[i] * b[i];
+                    }
+                    System.out.println("Length " + length + (sumOk ? ": Sum OK" : ": Sum error!"));
+                    long d = sa.dot(sb);
+                    System.out.println(d == dotSequential ? "Dot OK: " + d
+                            : "Dot error! Expected " + dotSequential + ", got " + d + ".");
+                }
+            }
+
+            // Products near 2^31 overflow an int accumulator
+            int length = 100_000;
+            long expected = (long) length * 46_000 * 46_000;
+            Path dir = Files.createTempDirectory("segment-vector");
+            Path file = dir.resolve("a.bin");
+            try (SegmentVector mapped = SegmentVector.create(file, length)) {
+                for (long i = 0; i < length; i++) {
+                    mapped.set(i, 46_000);
+                }
+            }
+            try (SegmentVector mapped = SegmentVector.map(file, false)) {
+                long d = mapped.dot(mapped);
+                System.out.println(d == expected ? "Mapped long dot OK: " + d
+                        : "Mapped long dot error! Expected " + expected + ", got " + d + ".");
+            } finally {
+                Files.delete(file);
+                Files.delete(dir);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("computations interrupted");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Memory throughput of sum and dot, in GB/s of elements read and written, for heap Vectors and
+// for SegmentVectors off-heap and mapped from a file. The file sits in the temporary directory
+// and is usually in the page cache after the first round, so this measures mapping overhead,
+// not the disk. Each figure is the best of ROUNDS runs.
+public class SegmentVectorBenchmark {
+    private static final int LENGTH = 1 << 24;
+    private static final int ROUNDS = 10;
+
+    private interface Operation {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(42);
+        int[] a = random.ints(LENGTH, 0, 10).toArray();
+        int[] b = random.ints(LENGTH, 0, 10).toArray();
+        Vector heapA = new Vector(a);
+        Vector heapB = new Vector(b);
+
+        Path dir = Files.createTempDirectory("segment-vector-benchmark");
+        try (SegmentVector offHeapA = SegmentVector.of(a);
+             SegmentVector offHeapB = SegmentVector.of(b);
+             SegmentVector offHeapResult = SegmentVector.allocate(LENGTH);
+             SegmentVector mappedA = copyToFile(offHeapA, dir.resolve("a.bin"));
+             SegmentVector mappedB = copyToFile(offHeapB, dir.resolve("b.bin"));
+             SegmentVector mappedResult = SegmentVector.create(dir.resolve("c.bin"), LENGTH)) {
+            System.out.printf("%-10s %12s %12s%n", "vectors", "sum GB/s", "dot GB/s");
+            report("heap", () -> heapA.sum(heapB), () -> heapA.dot(heapB));
+            report("off-heap", () -> {
+                offHeapA.sum(offHeapB, offHeapResult);
+                return offHeapResult;
+            }, () -> offHeapA.dot(offHeapB));
+            report("mapped", () -> {
+                mappedA.sum(mappedB, mappedResult);
+                return mappedResult;
+            }, () -> mappedA.dot(mappedB));
+        } finally {
+            for (String name : new String[] { "a.bin", "b.bin", "c.bin" }) {
+                Files.deleteIfExists(dir.resolve(name));
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static SegmentVector copyToFile(SegmentVector vector, Path file) throws IOException {
+        SegmentVector mapped = SegmentVector.create(file, vector.length());
+        for (long i = 0; i < vector.length(); i++) {
+            mapped.set(i, vector.get(i));
+        }
+        return mapped;
+    }
+
+    private static void report(String name, Operation sum, Operation dot) throws Exception {
+        // sum reads two ints and writes one per element, dot reads two
+        double sumGBs = 3.0 * Integer.BYTES * LENGTH / best(sum);
+        double dotGBs = 2.0 * Integer.BYTES * LENGTH / best(dot);
+        System.out.printf("%-10s %12.2f %12.2f%n", name, sumGBs, dotGBs);
+    }
+
+    // Best time in nanoseconds; the first round warms up the JIT and is not counted
+    private static long best(Operation operation) throws Exception {
+        int sink = 0;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i <= ROUNDS; i++) {
+            long begin = System.nanoTime();
+            Object result = operation.run();
+            long time = System.nanoTime() - begin;
+            if (i > 0) {
+                best = Math.min(best, time);
+            }
+            sink += result.hashCode();
+        }
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return best;
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.Random;
+
+// Dense against sparse: dot products of two vectors, each with about density of its elements
+// non-zero, as Vector.dot, SparseVector.dot of two sparse vectors and of a sparse and a dense
+// one; and a matrix times a dense vector, as dense row dot products and as SparseMatrix.multiply.
+// Each figure is the best of ROUNDS runs after WARMUP runs.
+public class SparseBenchmark {
+    private static final int LENGTH = 10_000_000;
+    private static final int ROWS = 4_000;
+    private static final int COLUMNS = 4_000;
+    private static final double[] DENSITIES = {0.05, 0.01};
+    private static final int WARMUP = 5;
+    private static final int ROUNDS = 10;
+
+    private interface Operation {
+        Object run() throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Random random = new Random(42);
+        System.out.printf("%8s %12s %12s %12s %12s %12s%n",
+                "density", "dense dot", "sparse dot", "mixed dot", "dense M*x", "sparse M*x");
+        for (double density : DENSITIES) {
+            Vector a = SparseVector.generateRandomVector(random, LENGTH, density);
+            Vector b = SparseVector.generateRandomVector(random, LENGTH, density);
+            SparseVector sa = SparseVector.of(a);
+            SparseVector sb = SparseVector.of(b);
+
+            int[][] dense = SparseMatrix.generateRandomMatrix(random, ROWS, COLUMNS, density);
+            Vector[] denseRows = new Vector[ROWS];
+            for (int r = 0; r < ROWS; r++) {
+                denseRows[r] = new Vector(dense[r]);
+            }
+            SparseMatrix matrix = new SparseMatrix(dense);
+            Vector x = SparseVector.generateRandomVector(random, COLUMNS, 1.0);
+
+            System.out.printf("%8.2f %10.2fms %10.2fms %10.2fms %10.2fms %10.2fms%n", density,
+                    best(() -> a.dot(b)), best(() -> sa.dot(sb)), best(() -> sa.dot(b)),
+                    best(() -> {
+                        int[] y = new int[ROWS];
+                        for (int r = 0; r < ROWS; r++) {
+                            y[r] = denseRows[r].dot(x);
+                        }
+                        return y;
+                    }),
+                    best(() -> matrix.multiply(x)));
+        }
+    }
+
+    // Best time in milliseconds
+    private static double best(Operation operation) throws InterruptedException {
+        int sink = 0;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP + ROUNDS; i++) {
+            long begin = System.nanoTime();
+            Object result = operation.run();
+            long time = System.nanoTime() - begin;
+            if (i >= WARMUP) {
+                best = Math.min(best, time);
+            }
+            sink += result.hashCode();
+        }
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return best / 1e6;
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+// A sparse matrix in compressed sparse row (CSR) form: the non-zeros row after row, with their
+// columns, and for every row where its non-zeros start. multiply() splits the rows into parts
+// with about the same number of non-zeros, not the same number of rows, so a few dense rows do
+// not leave one chunk with most of the work; a single row is never split.
+@SuppressWarnings("serial")
+public class SparseMatrix {
+    private final int rows;
+    private final int columns;
+    // Non-zeros of row r are at rowStarts[r] .. rowStarts[r + 1] - 1
+    private final int[] rowStarts;
+    private final int[] columnIndices;
+    private final int[] values;
+
+    public SparseMatrix(int[][] dense) {
+        this.rows = dense.length;
+        this.columns = rows == 0 ? 0 : dense[0].length;
+        this.rowStarts = new int[rows + 1];
+        int nonZeros = 0;
+        for (int r = 0; r < rows; r++) {
+            if (dense[r].length != columns) {
+                throw new IllegalArgumentException("Rows have different lengths.");
+            }
+            for (int x : dense[r]) {
+                if (x != 0) {
+                    nonZeros++;
+                }
+            }
+        }
+        this.columnIndices = new int[nonZeros];
+        this.values = new int[nonZeros];
+        int n = 0;
+        for (int r = 0; r < rows; r++) {
+            rowStarts[r] = n;
+            for (int c = 0; c < columns; c++) {
+                if (dense[r][c] != 0) {
+                    columnIndices[n] = c;
+                    values[n] = dense[r][c];
+                    n++;
+                }
+            }
+        }
+        rowStarts[rows] = n;
+    }
+
+    public SparseMatrix(SparseVector[] rows, int columns) {
+        this.rows = rows.length;
+        this.columns = columns;
+        this.rowStarts = new int[rows.length + 1];
+        int nonZeros = 0;
+        for (SparseVector row : rows) {
+            if (row.length() != columns) {
+                throw new IllegalArgumentException("Rows have different lengths.");
+            }
+            nonZeros += row.nonZeros();
+        }
+        this.columnIndices = new int[nonZeros];
+        this.values = new int[nonZeros];
+        int n = 0;
+        for (int r = 0; r < rows.length; r++) {
+            rowStarts[r] = n;
+            int rowNonZeros = rows[r].nonZeros();
+            System.arraycopy(rows[r].indices(), 0, columnIndices, n, rowNonZeros);
+            System.arraycopy(rows[r].values(), 0, values, n, rowNonZeros);
+            n += rowNonZeros;
+        }
+        rowStarts[rows.length] = n;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int nonZeros() {
+        return values.length;
+    }
+
+    final Vector multiplySequential(Vector x) {
+        if (x.length() != columns) {
+            throw new IllegalArgumentException("Vector length differs from the number of columns.");
+        }
+        Vector result = new Vector(rows);
+        int[] elements = result.elements();
+        for (int r = 0; r < rows; r++) {
+            elements[r] = SparseVector.dotRange(columnIndices, values, rowStarts[r], rowStarts[r + 1], x.elements());
+        }
+        return result;
+    }
+
+    private static class MultiplyHelper extends RecursiveAction {
+        private final SparseMatrix matrix;
+        private final int[] x;
+        private final int[] result;
+        private final int beginRow;
+        private final int endRow;
+
+        public MultiplyHelper(SparseMatrix matrix, int[] x, int[] result, int beginRow, int endRow) {
+            this.matrix = matrix;
+            this.x = x;
+            this.result = result;
+            this.beginRow = beginRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected void compute() {
+            int[] rowStarts = matrix.rowStarts;
+            // Checks for cancellation about every Vector.BLOCK_LENGTH non-zeros
+            int nextCheck = rowStarts[beginRow];
+            for (int r = beginRow; r < endRow; r++) {
+                if (rowStarts[r] >= nextCheck) {
+                    if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    nextCheck = rowStarts[r] + Vector.BLOCK_LENGTH;
+                }
+
+                result[r] = SparseVector.dotRange(matrix.columnIndices, matrix.values, rowStarts[r], rowStarts[r + 1], x);
+            }
+        }
+    }
+
+    // First row from which on at least nonZeros non-zeros follow the rows before it
+    private int rowAt(int nonZeros) {
+        int r = Arrays.binarySearch(rowStarts, nonZeros);
+        if (r < 0) {
+            return -r - 1;
+        }
+        // Empty rows share a start, take the first of them
+        while (r > 0 && rowStarts[r - 1] == nonZeros) {
+            r--;
+        }
+        return r;
+    }
+
+    // this * x, in parallel parts of about equal numbers of non-zeros
+    public Vector multiply(Vector x) throws InterruptedException {
+        if (x.length() != columns) {
+            throw new IllegalArgumentException("Vector length differs from the number of columns.");
+        }
+        Vector result = new Vector(rows);
+        int nonZeros = values.length;
+        if (Vector.sequential(nonZeros)) {
+            new MultiplyHelper(this, x.elements(), result.elements(), 0, rows).invoke();
+            Vector.throwIfInterrupted();
+            return result;
+        }
+
+        int partNonZeros = Vector.chunkLength(nonZeros);
+        List<Future<?>> chunks = new ArrayList<>();
+        int beginRow = 0;
+        while (beginRow < rows) {
+            int endRow = Math.max(beginRow + 1, Math.min(rows, rowAt(rowStarts[beginRow] + partNonZeros)));
+            if (rowStarts[endRow] == nonZeros) {
+                // Only empty rows left, they need no part of their own
+                endRow = rows;
+            }
+            chunks.add(Vector.POOL.submit(new MultiplyHelper(this, x.elements(), result.elements(), beginRow, endRow)));
+            beginRow = endRow;
+        }
+        Vector.awaitAll(chunks);
+
+        return result;
+    }
+
+    // ----------------------- TESTS -----------------------
+
+    // A rows x columns matrix with about density of its elements non-zero; every tenth row is
+    // ten times denser, so that equal numbers of rows would not be equal work
+    static int[][] generateRandomMatrix(Random random, int rows, int columns, double density) {
+        int[][] matrix = new int[rows][columns];
+        for (int r = 0; r < rows; r++) {
+            double rowDensity = r % 10 == 0 ? Math.min(1, 10 * density) : density;
+            for (int c = 0; c < columns; c++) {
+                if (random.nextDouble() < rowDensity) {
+                    matrix[r][c] = random.nextInt(-9, 10);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        try {
+            for (int[] size : new int[][] { { 7, 33 }, { 2_000, 3_000 } }) {
+                int[][] dense = generateRandomMatrix(random, size[0], size[1], 0.05);
+                SparseMatrix m = new SparseMatrix(dense);
+                SparseVector[] sparseRows = new SparseVector[size[0]];
+                for (int r = 0; r < size[0]; r++) {
+                    sparseRows[r] = SparseVector.of(new Vector(dense[r]));
+                }
+                SparseMatrix fromRows = new SparseMatrix(sparseRows, size[1]);
+                Vector x = SparseVector.generateRandomVector(random, size[1], 1.0);
+
+                int[] expected = new int[size[0]];
+                for (int r = 0; r < size[0]; r++) {
+                    expected[r] = new Vector(dense[r]).dotSequential(x);
+                }
+                Vector product = m.multiply(x);
+                boolean ok = product.equals(new Vector(expected)) && m.multiplySequential(x).equals(product)
+                        && fromRows.multiply(x).equals(product);
+                System.out.println(size[0] + "x" + size[1] + ", " + m.nonZeros() + " non-zeros"
+                        + (ok ? ": Multiply OK" : ": Multiply error!"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("computations interrupted");
+        }
+    }
+}
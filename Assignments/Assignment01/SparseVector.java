@@ -0,0 +1,228 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// A vector that stores only its non-zero elements: their indices in increasing order and their
+// values. Work is proportional to the number of non-zeros, not to the length, which pays off
+// for vectors that are mostly zeros. Mixes with dense Vectors in dot and sum.
+public class SparseVector {
+    private final int length;
+    private final int[] indices;
+    private final int[] values;
+
+    // indices must be increasing and within the length; zero values are dropped
+    public SparseVector(int length, int[] indices, int[] values) {
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("Different numbers of indices and values.");
+        }
+        int nonZeros = 0;
+        for (int k = 0; k < indices.length; k++) {
+            if (indices[k] < 0 || indices[k] >= length || (k > 0 && indices[k] <= indices[k - 1])) {
+                throw new IllegalArgumentException("Indices must be increasing and within the length.");
+            }
+            if (values[k] != 0) {
+                nonZeros++;
+            }
+        }
+        this.length = length;
+        this.indices = new int[nonZeros];
+        this.values = new int[nonZeros];
+        int n = 0;
+        for (int k = 0; k < indices.length; k++) {
+            if (values[k] != 0) {
+                this.indices[n] = indices[k];
+                this.values[n] = values[k];
+                n++;
+            }
+        }
+    }
+
+    public static SparseVector of(Vector dense) {
+        int[] elements = dense.elements();
+        int nonZeros = 0;
+        for (int x : elements) {
+            if (x != 0) {
+                nonZeros++;
+            }
+        }
+        int[] indices = new int[nonZeros];
+        int[] values = new int[nonZeros];
+        int n = 0;
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] != 0) {
+                indices[n] = i;
+                values[n] = elements[i];
+                n++;
+            }
+        }
+        return new SparseVector(elements.length, indices, values);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int nonZeros() {
+        return indices.length;
+    }
+
+    // The arrays themselves, not copies, for SparseMatrix
+    int[] indices() {
+        return indices;
+    }
+
+    int[] values() {
+        return values;
+    }
+
+    public Vector toDense() {
+        int[] elements = new int[length];
+        for (int k = 0; k < indices.length; k++) {
+            elements[indices[k]] = values[k];
+        }
+        return new Vector(elements);
+    }
+
+    // Merges the two index lists, only common indices contribute
+    public int dot(SparseVector other) {
+        if (length != other.length) {
+            throw new IllegalArgumentException("Vector lengths differ.");
+        }
+        int result = 0;
+        int k = 0;
+        int l = 0;
+        while (k < indices.length && l < other.indices.length) {
+            if (indices[k] < other.indices[l]) {
+                k++;
+            } else if (indices[k] > other.indices[l]) {
+                l++;
+            } else {
+                result += values[k++] * other.values[l++];
+            }
+        }
+        return result;
+    }
+
+    // Reads only the elements of dense at the non-zeros of this vector
+    public int dot(Vector dense) {
+        if (length != dense.length()) {
+            throw new IllegalArgumentException("Vector lengths differ.");
+        }
+        return dotRange(indices, values, 0, indices.length, dense.elements());
+    }
+
+    // Sum of values[k] * dense[indices[k]] for begin <= k < end, shared with SparseMatrix
+    static int dotRange(int[] indices, int[] values, int begin, int end, int[] dense) {
+        int result = 0;
+        for (int k = begin; k < end; k++) {
+            result += values[k] * dense[indices[k]];
+        }
+        return result;
+    }
+
+    // Merges the two index lists into the non-zeros of the sum
+    public SparseVector sum(SparseVector other) {
+        if (length != other.length) {
+            throw new IllegalArgumentException("Vector lengths differ.");
+        }
+        int[] sumIndices = new int[indices.length + other.indices.length];
+        int[] sumValues = new int[sumIndices.length];
+        int n = 0;
+        int k = 0;
+        int l = 0;
+        while (k < indices.length || l < other.indices.length) {
+            if (l == other.indices.length || (k < indices.length && indices[k] < other.indices[l])) {
+                sumIndices[n] = indices[k];
+                sumValues[n++] = values[k++];
+            } else if (k == indices.length || indices[k] > other.indices[l]) {
+                sumIndices[n] = other.indices[l];
+                sumValues[n++] = other.values[l++];
+            } else {
+                sumIndices[n] = indices[k];
+                sumValues[n++] = values[k++] + other.values[l++];
+            }
+        }
+        // The constructor drops the elements that cancelled out
+        return new SparseVector(length, Arrays.copyOf(sumIndices, n), Arrays.copyOf(sumValues, n));
+    }
+
+    // A dense copy of dense with this vector added
+    public Vector sum(Vector dense) {
+        if (length != dense.length()) {
+            throw new IllegalArgumentException("Vector lengths differ.");
+        }
+        Vector result = new Vector(dense.elements());
+        int[] elements = result.elements();
+        for (int k = 0; k < indices.length; k++) {
+            elements[indices[k]] += values[k];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+        for (int k = 0; k < indices.length; k++) {
+            s.append(k > 0 ? ", " : "").append(indices[k]).append(": ").append(values[k]);
+        }
+        return s.append("] of ").append(length).toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SparseVector)) {
+            return false;
+        }
+        SparseVector other = (SparseVector) obj;
+        return length == other.length && Arrays.equals(indices, other.indices) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * length + Arrays.hashCode(indices)) + Arrays.hashCode(values);
+    }
+
+    // ----------------------- TESTS -----------------------
+
+    // A dense vector with about density of its elements non-zero
+    static Vector generateRandomVector(Random random, int length, double density) {
+        int[] a = new int[length];
+        for (int i = 0; i < length; ++i) {
+            if (random.nextDouble() < density) {
+                a[i] = random.nextInt(-9, 10);
+            }
+        }
+        return new Vector(a);
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        for (int length : new int[] { 33, 100_003 }) {
+            // Denser when short, so that the printed vectors share some indices
+            double density = length <= 100 ? 0.3 : 0.05;
+            Vector a = generateRandomVector(random, length, density);
+            Vector b = generateRandomVector(random, length, density);
+            SparseVector sa = SparseVector.of(a);
+            SparseVector sb = SparseVector.of(b);
+            if (length <= 100) {
+                System.out.println("A:        " + sa);
+                System.out.println("B:        " + sb);
+            }
+
+            boolean toDenseOk = sa.toDense().equals(a);
+            System.out.println("Length " + length + (toDenseOk ? ": toDense OK" : ": toDense error!"));
+
+            Vector expectedSum = a.sumSequential(b);
+            boolean sumOk = sa.sum(sb).equals(SparseVector.of(expectedSum)) && sa.sum(b).equals(expectedSum);
+            System.out.println(sumOk ? "Sum OK" : "Sum error!");
+
+            int expectedDot = a.dotSequential(b);
+            int sparseDot = sa.dot(sb);
+            int mixedDot = sa.dot(b);
+            if (sparseDot != expectedDot || mixedDot != expectedDot) {
+                System.out.println("Dot error! Expected " + expectedDot + ", got " + sparseDot + " and " + mixedDot + ".");
+            } else {
+                System.out.println("Dot OK: " + sparseDot);
+            }
+        }
+    }
+}
@@ -1,11 +1,28 @@
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
-@SuppressWarnings("unused")
+// Helpers are never serialized
+@SuppressWarnings({"unused", "serial"})
 public class Vector {
-    private static final int SUM_CHUNK_LENGTH = 10;
-    private static final int DOT_CHUNK_LENGTH = 10;
+    // Shorter vectors are summed and multiplied sequentially, handing them to the pool costs more
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 15;
+    private static final int MIN_CHUNK_LENGTH = 1 << 13;
+    // More chunks than threads, so that work stealing can even out slower threads
+    private static final int CHUNKS_PER_THREAD = 4;
+    // Chunks check for interrupts and cancellation between blocks of this many elements, so that
+    // the loops in between can use SIMD kernels
+    static final int BLOCK_LENGTH = 1 << 12;
+
+    // Shared work-stealing pool, one thread per core
+    static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+    // With a single core the chunks would only run one after another
+    private static final boolean SEQUENTIAL_ONLY = Runtime.getRuntime().availableProcessors() < 2;
 
     private final int[] elements;
 
@@ -17,7 +34,26 @@ public class Vector {
         this.elements = Arrays.copyOf(elements, elements.length);
     }
 
-    private final Vector sumSequential(Vector other) {
+    public int length() {
+        return elements.length;
+    }
+
+    // The elements themselves, not a copy, for VectorExpr
+    int[] elements() {
+        return elements;
+    }
+
+    // Whether work on a vector of the given length is better done in the calling thread
+    static boolean sequential(int length) {
+        return sequential((long) length);
+    }
+
+    // Same for the long lengths of SegmentVector
+    static boolean sequential(long length) {
+        return SEQUENTIAL_ONLY || length < SEQUENTIAL_THRESHOLD;
+    }
+
+    final Vector sumSequential(Vector other) {
         if (this.elements.length != other.elements.length) {
             throw new IllegalArgumentException("Vector lengths differ.");
         }
@@ -28,7 +64,7 @@ public class Vector {
         return result;
     }
 
-    private final int dotSequential(Vector other) {
+    final int dotSequential(Vector other) {
         if (this.elements.length != other.elements.length) {
             throw new IllegalArgumentException("Vector lengths differ.");
         }
@@ -39,7 +75,7 @@ public class Vector {
         return result;
     }
 
-    private static class SumHelper implements Runnable {
+    private static class SumHelper extends RecursiveAction {
         private final Vector left;
         private final Vector right;
         private final Vector result;
@@ -55,16 +91,49 @@ public class Vector {
         }
 
         @Override
-        public void run() {
+        protected void compute() {
 
-            for (int i = begin; i < end; i++) {
-                if (Thread.currentThread().isInterrupted()) {
+            for (int i = begin; i < end; i += BLOCK_LENGTH) {
+                if (isCancelled() || Thread.currentThread().isInterrupted()) {
                     return;
                 }
 
-                result.elements[i] = left.elements[i] + right.elements[i];
+                VectorKernels.add(left.elements, right.elements, result.elements, i, Math.min(i + BLOCK_LENGTH, end));
+            }
+
+        }
+    }
+
+    // Chunk length for a vector of the given length: a few chunks per pool thread, but none so
+    // short that scheduling it costs more than summing it
+    static int chunkLength(int length) {
+        return (int) chunkLength((long) length);
+    }
+
+    static long chunkLength(long length) {
+        return Math.max(MIN_CHUNK_LENGTH, Math.ceilDiv(length, (long) POOL.getParallelism() * CHUNKS_PER_THREAD));
+    }
+
+    // Waits for all chunks; if interrupted, cancels them, chunks already running stop at the next block
+    static void awaitAll(List<Future<?>> chunks) throws InterruptedException {
+        try {
+            for (Future<?> chunk : chunks) {
+                chunk.get();
             }
+        } catch (InterruptedException e) {
+            for (Future<?> chunk : chunks) {
+                chunk.cancel(true);
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Chunk failed.", e.getCause());
+        }
+    }
 
+    // A chunk run in the calling thread stops early if the thread is interrupted
+    static void throwIfInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
         }
     }
 
@@ -73,30 +142,25 @@ public class Vector {
             throw new IllegalArgumentException("Vector lengths differ.");
         }
         Vector result = new Vector(elements.length);
-
-        ArrayList<Thread> threads = new ArrayList<>();
-
-        for (int i = 0; i < elements.length; i += SUM_CHUNK_LENGTH) {
-            int end = Math.min(i + SUM_CHUNK_LENGTH, elements.length);
-            threads.add(new Thread(new SumHelper(this, v, result, i, end)));
-            threads.getLast().start();
+        if (sequential(elements.length)) {
+            // invoke() runs the task in this thread
+            new SumHelper(this, v, result, 0, elements.length).invoke();
+            throwIfInterrupted();
+            return result;
         }
 
-
-        for (Thread thread : threads){
-            try {
-                thread.join();
-            } catch (InterruptedException e){
-                System.err.println("Error in thread " + thread.getName() + ": " + e.getMessage());
-                Thread.currentThread().interrupt();
-                throw e;
-            }
+        int chunkLength = chunkLength(elements.length);
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int i = 0; i < elements.length; i += chunkLength) {
+            int end = Math.min(i + chunkLength, elements.length);
+            chunks.add(POOL.submit(new SumHelper(this, v, result, i, end)));
         }
+        awaitAll(chunks);
 
         return result;
     }
 
-    private static class DotHelper implements Runnable {
+    private static class DotHelper extends RecursiveAction {
         private final Vector left;
         private final Vector right;
         private final int begin;
@@ -114,15 +178,15 @@ public class Vector {
         }
 
         @Override
-        public void run() {
+        protected void compute() {
 
             int localResult = 0;
-            for (int i = begin; i < end; ++i) {
-                if (Thread.currentThread().isInterrupted()) {
+            for (int i = begin; i < end; i += BLOCK_LENGTH) {
+                if (isCancelled() || Thread.currentThread().isInterrupted()) {
                     return;
                 }
 
-                localResult += left.elements[i] * right.elements[i];
+                localResult += VectorKernels.dot(left.elements, right.elements, i, Math.min(i + BLOCK_LENGTH, end));
             }
 
             result[resultPosition] = localResult;
@@ -134,33 +198,24 @@ public class Vector {
         if (elements.length != v.elements.length) {
             throw new IllegalArgumentException("Vector lengths differ.");
         }
-
-        int nThreads = Math.ceilDiv(elements.length, SUM_CHUNK_LENGTH);
-        int[] partialResults = new int[nThreads];
-        int total = 0;
-
-        ArrayList<Thread> threads = new ArrayList<>();
-
-        int threadNumber = 0;
-
-        for (int i = 0; i < elements.length; i += SUM_CHUNK_LENGTH) {
-            int end = Math.min(i + SUM_CHUNK_LENGTH, elements.length);
-            threads.add(new Thread(new DotHelper(this, v, i, end, partialResults, threadNumber)));
-            threads.getLast().start();
-            threadNumber++;
+        if (sequential(elements.length)) {
+            int[] result = new int[1];
+            new DotHelper(this, v, 0, elements.length, result, 0).invoke();
+            throwIfInterrupted();
+            return result[0];
         }
 
-
-        for (Thread thread : threads){
-            try {
-                thread.join();
-            } catch (InterruptedException e){
-                System.err.println("Error in thread " + thread.getName() + ": " + e.getMessage());
-                throw e;
-            }
+        int chunkLength = chunkLength(elements.length);
+        int[] partialResults = new int[Math.ceilDiv(elements.length, chunkLength)];
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int i = 0; i < elements.length; i += chunkLength) {
+            int end = Math.min(i + chunkLength, elements.length);
+            chunks.add(POOL.submit(new DotHelper(this, v, i, end, partialResults, chunks.size())));
         }
+        awaitAll(chunks);
 
-        for (int n : partialResults){
+        int total = 0;
+        for (int n : partialResults) {
             total += n;
         }
 
@@ -200,11 +255,17 @@ public class Vector {
 
     public static void main(String[] args) {
         try {
-            for (int length : new int[] { 33, 30 }) {
+            // The long vectors go through the pool, the short ones are computed sequentially
+            for (int length : new int[] { 33, 30, 100_003, 1_000_000 }) {
+                boolean print = length <= 100;
                 Vector a = generateRandomVector(length);
-                System.out.println("A:        " + a);
                 Vector b = generateRandomVector(length);
-                System.out.println("B:        " + b);
+                if (print) {
+                    System.out.println("A:        " + a);
+                    System.out.println("B:        " + b);
+                } else {
+                    System.out.println("Length:   " + length);
+                }
 
                 Vector c = a.sum(b);
                 Vector cSequential = a.sumSequential(b);
@@ -214,7 +275,7 @@ public class Vector {
                     System.out.println("Expected: " + cSequential);
                     System.out.println("Got:      " + c);
                 } else {
-                    System.out.println("Sum OK:   " + c);
+                    System.out.println(print ? "Sum OK:   " + c : "Sum OK");
                 }
 
                 int d = a.dot(b);
@@ -0,0 +1,68 @@
+import java.util.Random;
+
+// Compares Vector.sum and Vector.dot, pooled and using the SIMD kernels, with the scalar
+// sequential versions across vector lengths. Each figure is the best of ROUNDS runs, after
+// warming up the JIT on at least WARMUP_ELEMENTS elements.
+//
+// The second table compares (a + b) . c computed eagerly with Vector, which makes the sum a
+// full Vector first, with the same expression fused by VectorExpr.
+public class VectorBenchmark {
+    private static final int[] LENGTHS = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private static final long WARMUP_ELEMENTS = 100_000_000;
+    private static final int ROUNDS = 10;
+
+    private interface Operation {
+        Object run() throws InterruptedException;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Random random = new Random(42);
+        System.out.printf("%12s %14s %14s %8s %14s %14s %8s%n",
+                "length", "sumSeq ns/el", "sum ns/el", "speedup", "dotSeq ns/el", "dot ns/el", "speedup");
+        for (int length : LENGTHS) {
+            Vector a = new Vector(random.ints(length, 0, 10).toArray());
+            Vector b = new Vector(random.ints(length, 0, 10).toArray());
+
+            double sumSequential = best(() -> a.sumSequential(b), length);
+            double sum = best(() -> a.sum(b), length);
+            double dotSequential = best(() -> a.dotSequential(b), length);
+            double dot = best(() -> a.dot(b), length);
+            System.out.printf("%12d %14.3f %14.3f %8.2f %14.3f %14.3f %8.2f%n", length,
+                    sumSequential, sum, sumSequential / sum, dotSequential, dot, dotSequential / dot);
+        }
+
+        System.out.println();
+        System.out.printf("%12s %14s %14s %8s%n", "length", "eager ns/el", "fused ns/el", "speedup");
+        for (int length : LENGTHS) {
+            Vector a = new Vector(random.ints(length, 0, 10).toArray());
+            Vector b = new Vector(random.ints(length, 0, 10).toArray());
+            Vector c = new Vector(random.ints(length, 0, 10).toArray());
+            VectorExpr expr = VectorExpr.of(a).plus(VectorExpr.of(b));
+            VectorExpr exprC = VectorExpr.of(c);
+
+            double eager = best(() -> a.sum(b).dot(c), length);
+            double fused = best(() -> expr.dot(exprC), length);
+            System.out.printf("%12d %14.3f %14.3f %8.2f%n", length, eager, fused, eager / fused);
+        }
+    }
+
+    // Best time per element in nanoseconds
+    private static double best(Operation operation, int length) throws InterruptedException {
+        // Keeps the results alive, so that the JIT cannot drop the work
+        int sink = 0;
+        for (long i = 0; i < Math.max(1, WARMUP_ELEMENTS / length); i++) {
+            sink += operation.run().hashCode();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long begin = System.nanoTime();
+            Object result = operation.run();
+            best = Math.min(best, System.nanoTime() - begin);
+            sink += result.hashCode();
+        }
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return (double) best / length;
+    }
+}
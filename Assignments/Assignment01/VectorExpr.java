@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+// A lazily evaluated expression over Vectors, such as a.plus(b).times(c).scale(2). Building an
+// expression computes nothing; evaluate(), sum() and dot() compute the whole tree in one pass
+// over the operands, in the pooled chunks Vector uses, instead of making a full intermediate
+// Vector and a separate parallel pass for every operation.
+//
+// Each chunk goes through its range in blocks of Vector.BLOCK_LENGTH elements: every node of
+// the tree computes the block into a small buffer that stays in cache, using the SIMD kernels,
+// and only the final block is written out or reduced. The buffers are allocated once per chunk,
+// no more of them than the tree is deep.
+//
+// Operands are read while the expression is evaluated, not when it is built.
+@SuppressWarnings("serial")
+public abstract class VectorExpr {
+    private final int length;
+
+    private VectorExpr(int length) {
+        this.length = length;
+    }
+
+    public static VectorExpr of(Vector v) {
+        return new Operand(v.elements());
+    }
+
+    public int length() {
+        return length;
+    }
+
+    // this[i] + other[i]
+    public VectorExpr plus(VectorExpr other) {
+        return new Plus(this, other);
+    }
+
+    // this[i] * other[i]
+    public VectorExpr times(VectorExpr other) {
+        return new Times(this, other);
+    }
+
+    // factor * this[i]
+    public VectorExpr scale(int factor) {
+        return new Scale(this, factor);
+    }
+
+    // Computes every element into a new Vector
+    public Vector evaluate() throws InterruptedException {
+        Vector result = new Vector(length);
+        run((begin, end) -> new EvaluateHelper(this, result.elements(), begin, end), null);
+        return result;
+    }
+
+    // Sum of all elements, without storing any of them
+    public int sum() throws InterruptedException {
+        int[] total = new int[1];
+        run((begin, end) -> new SumHelper(this, begin, end), total);
+        return total[0];
+    }
+
+    // Sum of this[i] * other[i]
+    public int dot(VectorExpr other) throws InterruptedException {
+        return times(other).sum();
+    }
+
+    // Computes elements begin..end-1 into out[0..end-begin); buffers from level on are free
+    abstract void evaluateBlock(int begin, int end, int[] out, int[][] buffers, int level);
+
+    // Number of buffers evaluateBlock needs besides out
+    abstract int buffers();
+
+    private static final class Operand extends VectorExpr {
+        private final int[] elements;
+
+        private Operand(int[] elements) {
+            super(elements.length);
+            this.elements = elements;
+        }
+
+        @Override
+        void evaluateBlock(int begin, int end, int[] out, int[][] buffers, int level) {
+            System.arraycopy(elements, begin, out, 0, end - begin);
+        }
+
+        @Override
+        int buffers() {
+            return 0;
+        }
+    }
+
+    private abstract static class Binary extends VectorExpr {
+        private final VectorExpr left;
+        private final VectorExpr right;
+
+        private Binary(VectorExpr left, VectorExpr right) {
+            super(left.length());
+            if (left.length() != right.length()) {
+                throw new IllegalArgumentException("Vector lengths differ.");
+            }
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        void evaluateBlock(int begin, int end, int[] out, int[][] buffers, int level) {
+            left.evaluateBlock(begin, end, out, buffers, level);
+            int[] rightBlock = buffers[level];
+            right.evaluateBlock(begin, end, rightBlock, buffers, level + 1);
+            combine(out, rightBlock, end - begin);
+        }
+
+        // out[i] = out[i] op right[i] for i < n
+        abstract void combine(int[] out, int[] right, int n);
+
+        @Override
+        int buffers() {
+            return Math.max(left.buffers(), 1 + right.buffers());
+        }
+    }
+
+    private static final class Plus extends Binary {
+        private Plus(VectorExpr left, VectorExpr right) {
+            super(left, right);
+        }
+
+        @Override
+        void combine(int[] out, int[] right, int n) {
+            VectorKernels.add(out, right, out, 0, n);
+        }
+    }
+
+    private static final class Times extends Binary {
+        private Times(VectorExpr left, VectorExpr right) {
+            super(left, right);
+        }
+
+        @Override
+        void combine(int[] out, int[] right, int n) {
+            VectorKernels.multiply(out, right, out, 0, n);
+        }
+    }
+
+    private static final class Scale extends VectorExpr {
+        private final VectorExpr operand;
+        private final int factor;
+
+        private Scale(VectorExpr operand, int factor) {
+            super(operand.length());
+            this.operand = operand;
+            this.factor = factor;
+        }
+
+        @Override
+        void evaluateBlock(int begin, int end, int[] out, int[][] buffers, int level) {
+            operand.evaluateBlock(begin, end, out, buffers, level);
+            VectorKernels.scale(out, factor, out, 0, end - begin);
+        }
+
+        @Override
+        int buffers() {
+            return operand.buffers();
+        }
+    }
+
+    // A chunk: goes through its range block by block, checking for cancellation in between
+    private abstract static class Helper extends RecursiveAction {
+        private final VectorExpr expr;
+        private final int begin;
+        private final int end;
+
+        private Helper(VectorExpr expr, int begin, int end) {
+            this.expr = expr;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            int blockLength = Math.min(Vector.BLOCK_LENGTH, end - begin);
+            int[] block = new int[blockLength];
+            int[][] buffers = new int[expr.buffers()][blockLength];
+            for (int i = begin; i < end; i += Vector.BLOCK_LENGTH) {
+                if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                int blockEnd = Math.min(i + Vector.BLOCK_LENGTH, end);
+                expr.evaluateBlock(i, blockEnd, block, buffers, 0);
+                consume(i, block, blockEnd - i);
+            }
+        }
+
+        // Called with every block of the chunk, computed into block[0..n)
+        abstract void consume(int begin, int[] block, int n);
+
+        // Adds what the chunk computed to total, after it finished
+        void addTo(int[] total) {
+        }
+    }
+
+    private static final class EvaluateHelper extends Helper {
+        private final int[] result;
+
+        private EvaluateHelper(VectorExpr expr, int[] result, int begin, int end) {
+            super(expr, begin, end);
+            this.result = result;
+        }
+
+        @Override
+        void consume(int begin, int[] block, int n) {
+            System.arraycopy(block, 0, result, begin, n);
+        }
+    }
+
+    private static final class SumHelper extends Helper {
+        private int localResult;
+
+        private SumHelper(VectorExpr expr, int begin, int end) {
+            super(expr, begin, end);
+        }
+
+        @Override
+        void consume(int begin, int[] block, int n) {
+            localResult += VectorKernels.sum(block, 0, n);
+        }
+
+        @Override
+        void addTo(int[] total) {
+            total[0] += localResult;
+        }
+    }
+
+    private interface HelperFactory {
+        Helper create(int begin, int end);
+    }
+
+    // Runs the chunks, in the calling thread for short vectors, and adds their results to total
+    private void run(HelperFactory factory, int[] total) throws InterruptedException {
+        List<Helper> helpers = new ArrayList<>();
+        if (Vector.sequential(length)) {
+            Helper helper = factory.create(0, length);
+            helper.invoke();
+            Vector.throwIfInterrupted();
+            helpers.add(helper);
+        } else {
+            int chunkLength = Vector.chunkLength(length);
+            List<Future<?>> chunks = new ArrayList<>();
+            for (int i = 0; i < length; i += chunkLength) {
+                Helper helper = factory.create(i, Math.min(i + chunkLength, length));
+                helpers.add(helper);
+                chunks.add(Vector.POOL.submit(helper));
+            }
+            Vector.awaitAll(chunks);
+        }
+        if (total != null) {
+            for (Helper helper : helpers) {
+                helper.addTo(total);
+            }
+        }
+    }
+
+    // ----------------------- TESTS -----------------------
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        try {
+            for (int length : new int[] { 33, 100_003 }) {
+                int[] a = random.ints(length, -10, 10).toArray();
+                int[] b = random.ints(length, -10, 10).toArray();
+                int[] c = random.ints(length, -10, 10).toArray();
+                VectorExpr ea = VectorExpr.of(new Vector(a));
+                VectorExpr eb = VectorExpr.of(new Vector(b));
+                VectorExpr ec = VectorExpr.of(new Vector(c));
+
+                // 3 * (a + b * c) + c, evaluated and summed; (a + b) . c
+                int[] expected = new int[length];
+                int expectedSum = 0;
+                int expectedDot = 0;
+                for (int i = 0; i < length; i++) {
+                    expected[i] = 3 * (a[i] + b[i] * c[i]) + c[i];
+                    expectedSum += expected[i];
+                    expectedDot += (a[i] + b[i]) * c[i];
+                }
+                VectorExpr expr = ea.plus(eb.times(ec)).scale(3).plus(ec);
+
+                Vector evaluated = expr.evaluate();
+                System.out.println("Length " + length + (evaluated.equals(new Vector(expected))
+                        ? ": Evaluate OK" : ": Evaluate error!"));
+                int sum = expr.sum();
+                System.out.println(sum == expectedSum ? "Sum OK: " + sum
+                        : "Sum error! Expected " + expectedSum + ", got " + sum + ".");
+                int dot = ea.plus(eb).dot(ec);
+                System.out.println(dot == expectedDot ? "Dot OK: " + dot
+                        : "Dot error! Expected " + expectedDot + ", got " + dot + ".");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("computations interrupted");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD loops over ranges of int arrays, written with the Java Vector API: whole lanes of the
+// widest vector the CPU supports at a time, then a scalar tail. Arithmetic wraps around exactly
+// like the scalar loops, so the results are the same bit for bit.
+//
+// The Vector API is an incubator module, compile and run with --add-modules jdk.incubator.vector.
+public class VectorKernels {
+    // Also used by the segment loops of SegmentVector
+    static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    // result[i] = left[i] + right[i] for begin <= i < end
+    public static void add(int[] left, int[] right, int[] result, int begin, int end) {
+        int i = begin;
+        int upper = begin + SPECIES.loopBound(end - begin);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector l = IntVector.fromArray(SPECIES, left, i);
+            IntVector r = IntVector.fromArray(SPECIES, right, i);
+            l.add(r).intoArray(result, i);
+        }
+        for (; i < end; i++) {
+            result[i] = left[i] + right[i];
+        }
+    }
+
+    // result[i] = left[i] * right[i] for begin <= i < end
+    public static void multiply(int[] left, int[] right, int[] result, int begin, int end) {
+        int i = begin;
+        int upper = begin + SPECIES.loopBound(end - begin);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector l = IntVector.fromArray(SPECIES, left, i);
+            IntVector r = IntVector.fromArray(SPECIES, right, i);
+            l.mul(r).intoArray(result, i);
+        }
+        for (; i < end; i++) {
+            result[i] = left[i] * right[i];
+        }
+    }
+
+    // result[i] = factor * elements[i] for begin <= i < end
+    public static void scale(int[] elements, int factor, int[] result, int begin, int end) {
+        int i = begin;
+        int upper = begin + SPECIES.loopBound(end - begin);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, elements, i).mul(factor).intoArray(result, i);
+        }
+        for (; i < end; i++) {
+            result[i] = factor * elements[i];
+        }
+    }
+
+    // Sum of elements[i] for begin <= i < end
+    public static int sum(int[] elements, int begin, int end) {
+        int i = begin;
+        int upper = begin + SPECIES.loopBound(end - begin);
+        IntVector sums = IntVector.zero(SPECIES);
+        for (; i < upper; i += SPECIES.length()) {
+            sums = sums.add(IntVector.fromArray(SPECIES, elements, i));
+        }
+        int result = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < end; i++) {
+            result += elements[i];
+        }
+        return result;
+    }
+
+    // Sum of left[i] * right[i] for begin <= i < end
+    public static int dot(int[] left, int[] right, int begin, int end) {
+        int i = begin;
+        int upper = begin + SPECIES.loopBound(end - begin);
+        // One partial sum per lane, added up once at the end
+        IntVector sums = IntVector.zero(SPECIES);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector l = IntVector.fromArray(SPECIES, left, i);
+            IntVector r = IntVector.fromArray(SPECIES, right, i);
+            sums = sums.add(l.mul(r));
+        }
+        int result = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < end; i++) {
+            result += left[i] * right[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+package lab05.assignments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntBinaryOperator;
+
+// Row sums of the MatrixRowSumsPooled matrix, in cells per second: one Callable per cell with
+// invokeAll once per row, as MatrixRowSumsPooled used to do, against TiledMatrixReducer with
+// several tile sizes. The per-cell version only runs on the smaller matrix. Each figure is the
+// best of ROUNDS runs after one warm-up run.
+public class MatrixReductionBenchmark {
+    private static final int[][] SIZES = {{1_000, 1_000}, {4_000, 4_000}};
+    private static final int PER_CELL_MAX_CELLS = 1_000_000;
+    private static final int[][] TILES = {{1, 256}, {16, 256}, {64, 1024}, {256, 4096}};
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final int ROUNDS = 3;
+
+    private static final IntBinaryOperator matrixDefinition = (row, col) -> {
+        int a = 2 * col + 1;
+        return (row + 1) * (a % 4 - 2) * a;
+    };
+
+    private interface RowSums {
+        int[] compute(int rows, int columns) throws InterruptedException, ExecutionException;
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        System.out.printf("%-20s %12s %14s%n", "method", "cells", "cells/s");
+        for (int[] size : SIZES) {
+            int[] expected = sequential(size[0], size[1]);
+            if ((long) size[0] * size[1] <= PER_CELL_MAX_CELLS) {
+                report("task per cell", size, expected, MatrixReductionBenchmark::perCell);
+            }
+            for (int[] tile : TILES) {
+                try (TiledMatrixReducer reducer = new TiledMatrixReducer(tile[0], tile[1], PARALLELISM)) {
+                    report("tiles " + tile[0] + "x" + tile[1], size, expected,
+                            (rows, columns) -> reducer.rowSums(matrixDefinition, rows, columns));
+                }
+            }
+        }
+    }
+
+    private static void report(String name, int[] size, int[] expected, RowSums method)
+            throws InterruptedException, ExecutionException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i <= ROUNDS; i++) {
+            long begin = System.nanoTime();
+            int[] sums = method.compute(size[0], size[1]);
+            long time = System.nanoTime() - begin;
+            if (!Arrays.equals(sums, expected)) {
+                throw new IllegalStateException(name + " computed wrong sums");
+            }
+            if (i > 0) {
+                best = Math.min(best, time);
+            }
+        }
+        long cells = (long) size[0] * size[1];
+        System.out.printf("%-20s %12d %14.0f%n", name, cells, cells / (best / 1e9));
+    }
+
+    private static int[] sequential(int rows, int columns) {
+        int[] sums = new int[rows];
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < columns; ++c) {
+                sums[r] += matrixDefinition.applyAsInt(r, c);
+            }
+        }
+        return sums;
+    }
+
+    // The former MatrixRowSumsPooled.printRowSumsInParallel, without the printing
+    private static int[] perCell(int rows, int columns) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(PARALLELISM);
+        int[] sums = new int[rows];
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < columns; ++c) {
+                    int row = r;
+                    int column = c;
+                    tasks.add(() -> matrixDefinition.applyAsInt(row, column));
+                }
+                for (Future<Integer> futureResult : pool.invokeAll(tasks)) {
+                    sums[r] += futureResult.get();
+                }
+                tasks.clear();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return sums;
+    }
+}
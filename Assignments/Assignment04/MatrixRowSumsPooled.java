@@ -1,12 +1,6 @@
 package lab05.assignments;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.function.IntBinaryOperator;
 
 
@@ -14,6 +8,9 @@ public class MatrixRowSumsPooled {
     private static final int N_ROWS = 10;
     private static final int N_COLUMNS = 100;
     private static final int N_THREADS = 4;
+    // Small enough that the matrix above is split both ways
+    private static final int TILE_ROWS = 4;
+    private static final int TILE_COLUMNS = 32;
 
     private static IntBinaryOperator matrixDefinition = (row, col) -> {
         int a = 2 * col + 1;
@@ -31,27 +28,11 @@ public class MatrixRowSumsPooled {
     }
 
     public static void printRowSumsInParallel() throws InterruptedException {
-        ExecutorService pool = Executors.newFixedThreadPool(N_THREADS);
-        List<Callable<Integer>> tasks = new ArrayList<>();
-        try {
+        try (TiledMatrixReducer reducer = new TiledMatrixReducer(TILE_ROWS, TILE_COLUMNS, N_THREADS)) {
+            // All tiles of all rows are computed at once, one task per tile
+            int[] sums = reducer.rowSums(matrixDefinition, N_ROWS, N_COLUMNS);
             for (int r = 0; r < N_ROWS; r++) {
-                // Create a task for each cell in the row
-                for (int c = 0; c < N_COLUMNS; ++c) {
-                    tasks.add(new Task(r, c));
-                }
-
-                // Execute all tasks and create a list of futures
-                List<Future<Integer>> futures = pool.invokeAll(tasks);
-                int sum = 0;
-
-                // Sum the results
-                for (Future<Integer> futureResult : futures) {
-                    sum += futureResult.get();
-                }
-
-                // Print the sum of the row and clear the task queue
-                System.out.println(r + " -> " + sum);
-                tasks.clear();
+                System.out.println(r + " -> " + sums[r]);
             }
 
         } catch (InterruptedException e) {
@@ -59,24 +40,6 @@ public class MatrixRowSumsPooled {
             Thread.currentThread().interrupt();
         } catch (ExecutionException e) {
             System.err.println("Execution failed: " + e.getCause().getMessage());
-        } finally {
-            pool.shutdown();
-        }
-    }
-
-
-    private static class Task implements Callable<Integer> {
-        private final int rowNo;
-        private final int columnNo;
-
-        private Task(int rowNo, int columnNo) {
-            this.rowNo = rowNo;
-            this.columnNo = columnNo;
-        }
-
-        @Override
-        public Integer call() {
-            return matrixDefinition.applyAsInt(rowNo, columnNo);
         }
     }
 
@@ -0,0 +1,116 @@
+package lab05.assignments;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntBinaryOperator;
+
+// Reduces every row of a matrix given by an IntBinaryOperator (row, column) -> value, in a pool.
+// The matrix is cut into tiles of tileRows x tileColumns cells, one task per tile instead of one
+// per cell, and the tiles of all rows are submitted at once, so no row waits for another. Each
+// tile reduces its part of every row it covers; the parts of a row are then combined in column
+// order, so the combining operator only needs to be associative.
+public class TiledMatrixReducer implements AutoCloseable {
+    private final int tileRows;
+    private final int tileColumns;
+    private final ExecutorService pool;
+
+    public TiledMatrixReducer(int tileRows, int tileColumns, int parallelism) {
+        if (tileRows < 1 || tileColumns < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Tile sizes and parallelism must be positive.");
+        }
+        this.tileRows = tileRows;
+        this.tileColumns = tileColumns;
+        this.pool = Executors.newFixedThreadPool(parallelism);
+    }
+
+    // Sum of every row
+    public int[] rowSums(IntBinaryOperator matrixDefinition, int rows, int columns)
+            throws InterruptedException, ExecutionException {
+        return reduceRows(matrixDefinition, rows, columns, Integer::sum, 0);
+    }
+
+    // For every row, identity combined with all its cells from left to right
+    public int[] reduceRows(IntBinaryOperator matrixDefinition, int rows, int columns,
+                            IntBinaryOperator combine, int identity)
+            throws InterruptedException, ExecutionException {
+        // Tiles row by row, each row of tiles from left to right
+        List<Future<int[]>> tiles = new ArrayList<>();
+        for (int r = 0; r < rows; r += tileRows) {
+            for (int c = 0; c < columns; c += tileColumns) {
+                tiles.add(pool.submit(new Tile(matrixDefinition, combine, identity,
+                        r, Math.min(r + tileRows, rows), c, Math.min(c + tileColumns, columns))));
+            }
+        }
+
+        int[] result = new int[rows];
+        int tilesPerRow = Math.ceilDiv(columns, tileColumns);
+        try {
+            for (int r = 0; r < rows; r += tileRows) {
+                int height = Math.min(tileRows, rows - r);
+                for (int i = 0; i < height; i++) {
+                    result[r + i] = identity;
+                }
+                for (int t = 0; t < tilesPerRow; t++) {
+                    int[] partial = tiles.get(r / tileRows * tilesPerRow + t).get();
+                    for (int i = 0; i < height; i++) {
+                        result[r + i] = combine.applyAsInt(result[r + i], partial[i]);
+                    }
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            for (Future<int[]> tile : tiles) {
+                tile.cancel(true);
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private static class Tile implements Callable<int[]> {
+        private final IntBinaryOperator matrixDefinition;
+        private final IntBinaryOperator combine;
+        private final int identity;
+        private final int beginRow;
+        private final int endRow;
+        private final int beginColumn;
+        private final int endColumn;
+
+        private Tile(IntBinaryOperator matrixDefinition, IntBinaryOperator combine, int identity,
+                     int beginRow, int endRow, int beginColumn, int endColumn) {
+            this.matrixDefinition = matrixDefinition;
+            this.combine = combine;
+            this.identity = identity;
+            this.beginRow = beginRow;
+            this.endRow = endRow;
+            this.beginColumn = beginColumn;
+            this.endColumn = endColumn;
+        }
+
+        // The reduction of the tile's part of each of its rows
+        @Override
+        public int[] call() throws InterruptedException {
+            int[] partial = new int[endRow - beginRow];
+            for (int r = beginRow; r < endRow; r++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                int acc = identity;
+                for (int c = beginColumn; c < endColumn; c++) {
+                    acc = combine.applyAsInt(acc, matrixDefinition.applyAsInt(r, c));
+                }
+                partial[r - beginRow] = acc;
+            }
+            return partial;
+        }
+    }
+}
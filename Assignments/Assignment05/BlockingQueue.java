@@ -1,65 +1,539 @@
 package lab06.assignments;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
+// Bounded queue on a preallocated circular array. Producers and consumers take separate locks,
+// so they only meet on the atomic element count, and every put/take wakes at most one waiter.
+// With capacity 0, items are handed from put to take through a SynchronousChannel.
+// The batch operations move many items per lock acquisition and wake the other side once.
+// The timed and try variants return null or false instead of waiting any longer; a null item
+// then cannot be told from no item, so queues polled that way should not carry nulls.
+// A queue created with QueueStats records its waits, wakeups and lock contention there; the
+// rendezvous of capacity 0 only records occupancy.
 public class BlockingQueue<T> {
+    // Result of takeNow() when there is no item
+    private static final Object NONE = new Object();
+
     private final int capacity;
-    private final Queue<T> queue;
+    private final Object[] items;
+    private final AtomicInteger count;
+
+    // Guards head; consumers wait on notEmpty
+    private final ReentrantLock takeLock;
+    private final Condition notEmpty;
+    private int head;
+
+    // Guards tail; producers wait on notFull
+    private final ReentrantLock putLock;
+    private final Condition notFull;
+    private int tail;
+
+    // special case for queue with size 0
+    private final SynchronousChannel<T> channel;
+
+    // Run whenever the queue stops being empty or full, for QueueSelector
+    private final CopyOnWriteArrayList<Runnable> watchers;
 
-    private T randez_vouz_result;
+    // null when not instrumented
+    private final QueueStats stats;
 
     public BlockingQueue(int capacity) {
+        this(capacity, false);
+    }
+
+    // A fair queue serves waiting producers and consumers in order of arrival
+    public BlockingQueue(int capacity, boolean fair) {
+        this(capacity, fair, null);
+    }
+
+    public BlockingQueue(int capacity, boolean fair, QueueStats stats) {
         this.capacity = capacity;
-        this.queue = new LinkedList<>();
-        this.randez_vouz_result = null;
+        this.items = new Object[capacity];
+        this.count = new AtomicInteger(0);
+        this.takeLock = new ReentrantLock(fair);
+        this.notEmpty = takeLock.newCondition();
+        this.putLock = new ReentrantLock(fair);
+        this.notFull = putLock.newCondition();
+        this.head = 0;
+        this.tail = 0;
+        this.channel = capacity == 0 ? new SynchronousChannel<>(fair) : null;
+        this.watchers = new CopyOnWriteArrayList<>();
+        this.stats = stats;
+        if (stats != null) {
+            stats.attach(count, capacity);
+        }
     }
 
-    public synchronized T take() throws InterruptedException {
+    public T take() throws InterruptedException {
         // special case for queue with size 0
-        if (capacity == 0){
-            while (this.randez_vouz_result == null){
-                wait();
+        if (capacity == 0) {
+            return channel.take();
+        }
+
+        T result;
+        int c;
+        lock(takeLock, false);
+        try {
+            awaitItem(false, 0);
+            result = dequeue();
+            c = count.getAndDecrement();
+            // Pass the wakeup on to the next consumer if something is left for it
+            if (c > 1) {
+                notEmpty.signal();
             }
-            T result = randez_vouz_result;
-            randez_vouz_result = null;
-            notifyAll();
-            return result;
+        } finally {
+            takeLock.unlock();
+        }
+        // The queue was full, so a producer may be waiting for the freed slot
+        if (c == capacity) {
+            signalNotFull();
+        }
+        return result;
+    }
+
+    public void put(T item) throws InterruptedException {
+        // special case for queue with size 0
+        if (capacity == 0) {
+            channel.put(item);
+            return;
+        }
+
+        int c;
+        lock(putLock, true);
+        try {
+            awaitRoom(false, 0);
+            enqueue(item);
+            c = count.getAndIncrement();
+            // Pass the wakeup on to the next producer if there is room left for it
+            if (c + 1 < capacity) {
+                notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        // The queue was empty, so a consumer may be waiting for the new item
+        if (c == 0) {
+            signalNotEmpty();
+        }
+    }
+
+    // Waits at most timeout for room; returns false if there was none
+    public boolean offer(T item, Duration timeout) throws InterruptedException {
+        // special case for queue with size 0
+        if (capacity == 0) {
+            return channel.offer(item, timeout);
+        }
+
+        long nanos = timeout.toNanos();
+        int c;
+        lock(putLock, true);
+        try {
+            if (!awaitRoom(true, nanos)) {
+                return false;
+            }
+            enqueue(item);
+            c = count.getAndIncrement();
+            if (c + 1 < capacity) {
+                notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0) {
+            signalNotEmpty();
+        }
+        return true;
+    }
+
+    // Waits at most timeout for an item; returns null if there was none
+    public T poll(Duration timeout) throws InterruptedException {
+        // special case for queue with size 0
+        if (capacity == 0) {
+            return channel.poll(timeout);
         }
 
-        while (queue.isEmpty()) {
-            wait();
+        long nanos = timeout.toNanos();
+        T result;
+        int c;
+        lock(takeLock, false);
+        try {
+            if (!awaitItem(true, nanos)) {
+                return null;
+            }
+            result = dequeue();
+            c = count.getAndDecrement();
+            if (c > 1) {
+                notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity) {
+            signalNotFull();
         }
-        T result = queue.poll();
-        notifyAll();
         return result;
     }
 
-    public synchronized void put(T item) throws InterruptedException {
+    // Puts the item if there is room right now (with capacity 0: if a consumer is waiting)
+    public boolean tryPut(T item) {
+        return putNow(() -> item);
+    }
+
+    // Takes an item if there is one right now (with capacity 0: if a producer is waiting);
+    // returns null otherwise
+    @SuppressWarnings("unchecked")
+    public T tryTake() {
+        Object result = takeNow();
+        return result == NONE ? null : (T) result;
+    }
+
+    // Puts the items in iteration order, waiting for room as needed. Other producers wait until the
+    // whole batch is in, so it stays contiguous. If interrupted, the items before the one being put
+    // stay in the queue.
+    public void putAll(Collection<? extends T> batch) throws InterruptedException {
         // special case for queue with size 0
-        if (capacity == 0){
-            while (randez_vouz_result != null){
-                wait();
+        if (capacity == 0) {
+            for (T item : batch) {
+                channel.put(item);
             }
-            randez_vouz_result = item;
-            wait();
             return;
         }
 
-        while (queue.size() == capacity) {
-            wait();
+        // Set when an item went into an empty queue since consumers were last signalled
+        boolean wasEmpty = false;
+        lock(putLock, true);
+        try {
+            for (T item : batch) {
+                if (count.get() == capacity) {
+                    // Let the consumers see what is in so far before waiting for them; the only
+                    // place takeLock is taken under putLock, never the other way round
+                    if (wasEmpty) {
+                        signalNotEmpty();
+                        wasEmpty = false;
+                    }
+                    awaitRoom(false, 0);
+                }
+                enqueue(item);
+                if (count.getAndIncrement() == 0) {
+                    wasEmpty = true;
+                }
+            }
+            if (count.get() < capacity) {
+                notFull.signal();
+            }
+        } finally {
+            try {
+                if (wasEmpty) {
+                    signalNotEmpty();
+                }
+            } finally {
+                putLock.unlock();
+            }
+        }
+    }
+
+    // Moves up to max items to target without waiting; returns the number moved
+    public int drainTo(Collection<? super T> target, int max) {
+        // special case for queue with size 0: only producers already waiting can hand items over
+        if (capacity == 0) {
+            int n = 0;
+            try {
+                while (n < max && channel.takeInto(target, Duration.ZERO)) {
+                    n++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return n;
         }
-        queue.offer(item);
-        notifyAll();
 
+        int n;
+        int c;
+        takeLock.lock();
+        try {
+            n = Math.min(max, count.get());
+            if (n <= 0) {
+                return 0;
+            }
+            c = dequeueInto(target, n);
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity) {
+            signalNotFull();
+        }
+        return n;
     }
 
-    public synchronized int getSize() {
+    // Waits at most timeout for an item, then takes it with up to max - 1 more that are already
+    // there; returns an empty list on timeout
+    public List<T> takeBatch(int max, Duration timeout) throws InterruptedException {
+        List<T> result = new ArrayList<>();
+        if (max <= 0) {
+            return result;
+        }
 
-        return queue.size();
+        // special case for queue with size 0
+        if (capacity == 0) {
+            if (channel.takeInto(result, timeout)) {
+                while (result.size() < max && channel.takeInto(result, Duration.ZERO)) {
+                    // keep taking from the producers already waiting
+                }
+            }
+            return result;
+        }
+
+        long nanos = timeout.toNanos();
+        int c;
+        lock(takeLock, false);
+        try {
+            if (!awaitItem(true, nanos)) {
+                return result;
+            }
+            c = dequeueInto(result, Math.min(max, count.get()));
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity) {
+            signalNotFull();
+        }
+        return result;
+    }
+
+    public int getSize() {
+        return count.get();
     }
 
     public int getCapacity() {
         return capacity;
     }
-}
\ No newline at end of file
+
+    // Puts the item made by supplier if there is room; supplier is only called then
+    boolean putNow(Supplier<? extends T> supplier) {
+        // special case for queue with size 0
+        if (capacity == 0) {
+            try {
+                return channel.offer(supplier.get(), Duration.ZERO);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        if (count.get() == capacity) {
+            return false;
+        }
+        int c;
+        putLock.lock();
+        try {
+            if (count.get() == capacity) {
+                return false;
+            }
+            enqueue(supplier.get());
+            c = count.getAndIncrement();
+            if (c + 1 < capacity) {
+                notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0) {
+            signalNotEmpty();
+        }
+        return true;
+    }
+
+    // Takes an item if there is one; returns NONE otherwise
+    Object takeNow() {
+        // special case for queue with size 0
+        if (capacity == 0) {
+            List<T> result = new ArrayList<>(1);
+            try {
+                return channel.takeInto(result, Duration.ZERO) ? result.get(0) : NONE;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return NONE;
+            }
+        }
+
+        if (count.get() == 0) {
+            return NONE;
+        }
+        T result;
+        int c;
+        takeLock.lock();
+        try {
+            if (count.get() == 0) {
+                return NONE;
+            }
+            result = dequeue();
+            c = count.getAndDecrement();
+            if (c > 1) {
+                notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity) {
+            signalNotFull();
+        }
+        return result;
+    }
+
+    static boolean isNone(Object result) {
+        return result == NONE;
+    }
+
+    void addWatcher(Runnable watcher) {
+        watchers.add(watcher);
+    }
+
+    void removeWatcher(Runnable watcher) {
+        watchers.remove(watcher);
+    }
+
+    private void lock(ReentrantLock lock, boolean put) throws InterruptedException {
+        if (stats == null) {
+            lock.lockInterruptibly();
+            return;
+        }
+        // Unlike tryLock(), a timed tryLock respects fairness
+        if (lock.tryLock(0, TimeUnit.NANOSECONDS)) {
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lockInterruptibly();
+        stats.lockContended(put, System.nanoTime() - start);
+    }
+
+    // Waits under takeLock until there is an item, at most nanos if timed; returns false if
+    // the time ran out first
+    private boolean awaitItem(boolean timed, long nanos) throws InterruptedException {
+        if (count.get() != 0) {
+            return true;
+        }
+        QueueStats.WaitEvent wait = stats == null ? null : stats.beginWait();
+        try {
+            while (count.get() == 0) {
+                if (!timed) {
+                    notEmpty.await();
+                } else if (nanos <= 0) {
+                    return false;
+                } else {
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                if (wait != null && count.get() == 0 && (!timed || nanos > 0)) {
+                    stats.wokeUpForNothing(false);
+                }
+            }
+            return true;
+        } finally {
+            if (wait != null) {
+                stats.endWait(false, wait, count.get());
+            }
+        }
+    }
+
+    // Waits under putLock until there is room, at most nanos if timed; returns false if the
+    // time ran out first
+    private boolean awaitRoom(boolean timed, long nanos) throws InterruptedException {
+        if (count.get() != capacity) {
+            return true;
+        }
+        QueueStats.WaitEvent wait = stats == null ? null : stats.beginWait();
+        try {
+            while (count.get() == capacity) {
+                if (!timed) {
+                    notFull.await();
+                } else if (nanos <= 0) {
+                    return false;
+                } else {
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                if (wait != null && count.get() == capacity && (!timed || nanos > 0)) {
+                    stats.wokeUpForNothing(true);
+                }
+            }
+            return true;
+        } finally {
+            if (wait != null) {
+                stats.endWait(true, wait, count.get());
+            }
+        }
+    }
+
+    // Moves n available items to target under takeLock and wakes the next consumer if some are
+    // left; returns the count before, the caller wakes a producer after unlocking if it was full
+    @SuppressWarnings("unchecked")
+    private int dequeueInto(Collection<? super T> target, int n) {
+        int taken = 0;
+        try {
+            // An item rejected by target stays in the queue
+            while (taken < n) {
+                target.add((T) items[head]);
+                dequeue();
+                taken++;
+            }
+        } finally {
+            if (taken < n) {
+                count.getAndAdd(-taken);
+            }
+        }
+        int c = count.getAndAdd(-n);
+        if (c > n) {
+            notEmpty.signal();
+        }
+        return c;
+    }
+
+    // The slot is written before the count is incremented, so a consumer seeing the count sees the item
+    private void enqueue(T item) {
+        items[tail] = item;
+        tail = (tail + 1) % capacity;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T dequeue() {
+        T result = (T) items[head];
+        items[head] = null;
+        head = (head + 1) % capacity;
+        return result;
+    }
+
+    private void signalNotEmpty() {
+        takeLock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+        notifyWatchers();
+    }
+
+    private void signalNotFull() {
+        putLock.lock();
+        try {
+            notFull.signal();
+        } finally {
+            putLock.unlock();
+        }
+        notifyWatchers();
+    }
+
+    private void notifyWatchers() {
+        if (!watchers.isEmpty()) {
+            for (Runnable w : watchers) {
+                w.run();
+            }
+        }
+    }
+}
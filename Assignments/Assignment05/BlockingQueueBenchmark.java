@@ -0,0 +1,170 @@
+package lab06.assignments;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+// Throughput of BlockingQueue against the single-monitor MonitorBlockingQueue, with as many
+// producers as consumers passing a fixed number of items through a small queue. The monitor
+// rendezvous can lose the wakeup of a waiting consumer and hang, so capacity 0 is measured for the
+// unfair and fair SynchronousChannel modes instead. Batches are measured with putAll/takeBatch,
+// and the cost of QueueStats by running the same load with and without it.
+public class BlockingQueueBenchmark {
+    private static final int ITEMS = 1_000_000;
+    // Every rendezvous blocks one of the two threads, so fewer items are enough
+    private static final int RENDEZVOUS_ITEMS = 100_000;
+    private static final int ROUNDS = 5;
+    private static final int[] THREAD_PAIRS = {1, 4, 16, 100};
+    private static final int[] CAPACITIES = {2, 64};
+    private static final int BATCH_CAPACITY = 256;
+    private static final int[] BATCH_SIZES = {1, 16, 64};
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%8s %8s %16s %16s%n", "pairs", "capacity", "monitor ops/s", "two-lock ops/s");
+        for (int capacity : CAPACITIES) {
+            for (int pairs : THREAD_PAIRS) {
+                double monitor = 0;
+                double twoLock = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    MonitorBlockingQueue<Integer> m = new MonitorBlockingQueue<>(capacity);
+                    monitor = Math.max(monitor, run(ITEMS, pairs, m::put, m::take));
+                    BlockingQueue<Integer> q = new BlockingQueue<>(capacity);
+                    twoLock = Math.max(twoLock, run(ITEMS, pairs, q::put, q::take));
+                }
+                System.out.printf("%8d %8d %16.0f %16.0f%n", pairs, capacity, monitor, twoLock);
+            }
+        }
+
+        System.out.printf("%n%8s %16s %16s%n", "pairs", "unfair ops/s", "fair ops/s");
+        for (int pairs : THREAD_PAIRS) {
+            double unfair = 0;
+            double fair = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                BlockingQueue<Integer> u = new BlockingQueue<>(0, false);
+                unfair = Math.max(unfair, run(RENDEZVOUS_ITEMS, pairs, u::put, u::take));
+                BlockingQueue<Integer> f = new BlockingQueue<>(0, true);
+                fair = Math.max(fair, run(RENDEZVOUS_ITEMS, pairs, f::put, f::take));
+            }
+            System.out.printf("%8d %16.0f %16.0f%n", pairs, unfair, fair);
+        }
+
+        System.out.printf("%n%8s %8s %16s%n", "pairs", "batch", "items/s");
+        for (int batch : BATCH_SIZES) {
+            for (int pairs : THREAD_PAIRS) {
+                double best = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    best = Math.max(best, runBatches(pairs, batch));
+                }
+                System.out.printf("%8d %8d %16.0f%n", pairs, batch, best);
+            }
+        }
+
+        System.out.printf("%n%8s %8s %16s %16s %10s%n", "pairs", "capacity", "plain ops/s", "stats ops/s", "overhead");
+        QueueStats.Snapshot last = null;
+        for (int capacity : CAPACITIES) {
+            for (int pairs : THREAD_PAIRS) {
+                double plain = 0;
+                double instrumented = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    BlockingQueue<Integer> q = new BlockingQueue<>(capacity);
+                    plain = Math.max(plain, run(ITEMS, pairs, q::put, q::take));
+                    try (QueueStats stats = new QueueStats("benchmark", Duration.ofMillis(1))) {
+                        BlockingQueue<Integer> s = new BlockingQueue<>(capacity, false, stats);
+                        instrumented = Math.max(instrumented, run(ITEMS, pairs, s::put, s::take));
+                        last = stats.snapshot();
+                    }
+                }
+                System.out.printf("%8d %8d %16.0f %16.0f %9.1f%%%n", pairs, capacity, plain, instrumented,
+                        100 * (plain - instrumented) / plain);
+            }
+        }
+        System.out.println("last run: " + last);
+        System.out.println("occupancy histogram: " + Arrays.toString(last.occupancyHistogram()));
+    }
+
+    // Like run, but every producer puts and every consumer takes up to batch items at a time
+    private static double runBatches(int pairs, int batch) throws InterruptedException {
+        BlockingQueue<Integer> q = new BlockingQueue<>(BATCH_CAPACITY);
+        int perThread = ITEMS / pairs / batch * batch;
+        List<Integer> items = Collections.nCopies(batch, 0);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < pairs; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < perThread; j += batch) {
+                        q.putAll(items);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    int taken = 0;
+                    while (taken < perThread) {
+                        taken += q.takeBatch(Math.min(batch, perThread - taken), Duration.ofDays(1)).size();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return (double) perThread * pairs / elapsed * 1e9;
+    }
+
+    // Returns the number of items passed per second
+    private static double run(int items, int pairs, QueueChannel.Put put, QueueChannel.Take take) throws InterruptedException {
+        int perThread = items / pairs;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < pairs; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < perThread; j++) {
+                        put.put(j);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < perThread; j++) {
+                        take.take();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return (double) perThread * pairs / elapsed * 1e9;
+    }
+}
@@ -134,7 +134,7 @@ public class BlockingQueueTest {
         return testThreads(Duration.ofMillis(1000), threads);
     }
 
-    private static void assertThat(boolean predicate, String message) {
+    static void assertThat(boolean predicate, String message) {
         // Not using built-in `assert`, because it's disabled by default (even in debug)
         // and tedious to enable (pass the -enableassertions or -ea flag to the JVM).
         if (!predicate) {
@@ -143,7 +143,7 @@ public class BlockingQueueTest {
     }
 
     // Start threads and check whether they finish in time and without exceptions.
-    private static boolean testThreads(Duration timeout, List<Thread> threads) {
+    static boolean testThreads(Duration timeout, List<Thread> threads) {
         AtomicBoolean ok = new AtomicBoolean(true);
 
         for (Thread t : threads) {
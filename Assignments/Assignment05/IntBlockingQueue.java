@@ -0,0 +1,55 @@
+package lab06.assignments;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+// BlockingQueue of ints that allocates nothing per element: items sit in a ring of primitive
+// slots, on the heap or, for capacities from DIRECT_THRESHOLD, off-heap in a direct buffer that
+// the garbage collector never scans or copies. The locking, including the rendezvous at
+// capacity 0, is in PrimitiveBlockingQueue.
+public class IntBlockingQueue extends PrimitiveBlockingQueue {
+    // Slots from which the ring is kept off-heap by default (4 MB)
+    public static final int DIRECT_THRESHOLD = 1 << 20;
+
+    private final IntBuffer items;
+
+    public IntBlockingQueue(int capacity) {
+        this(capacity, capacity >= DIRECT_THRESHOLD);
+    }
+
+    public IntBlockingQueue(int capacity, boolean direct) {
+        super(capacity);
+        if (direct && capacity > Integer.MAX_VALUE / Integer.BYTES) {
+            throw new IllegalArgumentException("capacity too big for a direct buffer");
+        }
+        this.items = direct
+                ? ByteBuffer.allocateDirect(length * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer()
+                : IntBuffer.allocate(length);
+    }
+
+    public int take() throws InterruptedException {
+        int result = items.get(startTake());
+        finishTake();
+        return result;
+    }
+
+    public void put(int item) throws InterruptedException {
+        items.put(startPut(), item);
+        finishPut();
+    }
+
+    // Moves up to max items to target from offset on without waiting; returns the number moved
+    public int drainTo(int[] target, int offset, int max) {
+        int n = startDrain(Math.min(max, target.length - offset));
+        for (int i = 0; i < n; i++) {
+            target[offset + i] = items.get(slot(i));
+        }
+        finishTake(n);
+        return n;
+    }
+
+    public boolean isDirect() {
+        return items.isDirect();
+    }
+}
@@ -0,0 +1,55 @@
+package lab06.assignments;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+// BlockingQueue of longs that allocates nothing per element: items sit in a ring of primitive
+// slots, on the heap or, for capacities from DIRECT_THRESHOLD, off-heap in a direct buffer that
+// the garbage collector never scans or copies. The locking, including the rendezvous at
+// capacity 0, is in PrimitiveBlockingQueue.
+public class LongBlockingQueue extends PrimitiveBlockingQueue {
+    // Slots from which the ring is kept off-heap by default (8 MB)
+    public static final int DIRECT_THRESHOLD = 1 << 20;
+
+    private final LongBuffer items;
+
+    public LongBlockingQueue(int capacity) {
+        this(capacity, capacity >= DIRECT_THRESHOLD);
+    }
+
+    public LongBlockingQueue(int capacity, boolean direct) {
+        super(capacity);
+        if (direct && capacity > Integer.MAX_VALUE / Long.BYTES) {
+            throw new IllegalArgumentException("capacity too big for a direct buffer");
+        }
+        this.items = direct
+                ? ByteBuffer.allocateDirect(length * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer()
+                : LongBuffer.allocate(length);
+    }
+
+    public long take() throws InterruptedException {
+        long result = items.get(startTake());
+        finishTake();
+        return result;
+    }
+
+    public void put(long item) throws InterruptedException {
+        items.put(startPut(), item);
+        finishPut();
+    }
+
+    // Moves up to max items to target from offset on without waiting; returns the number moved
+    public int drainTo(long[] target, int offset, int max) {
+        int n = startDrain(Math.min(max, target.length - offset));
+        for (int i = 0; i < n; i++) {
+            target[offset + i] = items.get(slot(i));
+        }
+        finishTake(n);
+        return n;
+    }
+
+    public boolean isDirect() {
+        return items.isDirect();
+    }
+}
@@ -0,0 +1,209 @@
+package lab06.assignments;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Locking shared by IntBlockingQueue and LongBlockingQueue, which differ only in the buffer
+// holding the items. This class works on slot numbers: an operation locks and waits here, the
+// subclass reads or writes the slot it got, and the operation is finished here, which also
+// unlocks. Same locking as BlockingQueue: separate put and take locks meeting on the atomic
+// count. Capacity 0 is a rendezvous on a single slot: the producer waits until a consumer took
+// its item, told apart from later ones by a ticket.
+abstract class PrimitiveBlockingQueue {
+    private final int capacity;
+    // Slots in the ring: capacity, or 1 for a rendezvous
+    protected final int length;
+    private final AtomicInteger count;
+
+    // Guards head; consumers wait on notEmpty
+    private final ReentrantLock takeLock;
+    private final Condition notEmpty;
+    private int head;
+
+    // Guards tail; producers wait on notFull
+    private final ReentrantLock putLock;
+    private final Condition notFull;
+    private int tail;
+
+    // Rendezvous only: items put so far under putLock, items taken so far under takeLock; the
+    // producer whose item is in the slot waits on pickedUp
+    private long putTickets;
+    private volatile long takenTickets;
+    private final Condition pickedUp;
+
+    protected PrimitiveBlockingQueue(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        this.capacity = capacity;
+        this.length = Math.max(1, capacity);
+        this.count = new AtomicInteger(0);
+        this.takeLock = new ReentrantLock();
+        this.notEmpty = takeLock.newCondition();
+        this.putLock = new ReentrantLock();
+        this.notFull = putLock.newCondition();
+        this.head = 0;
+        this.tail = 0;
+        this.putTickets = 0;
+        this.takenTickets = 0;
+        this.pickedUp = putLock.newCondition();
+    }
+
+    public int getSize() {
+        return capacity == 0 ? 0 : count.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Waits for a free slot and returns it, holding putLock; the caller writes the item into the
+    // slot and then calls finishPut
+    protected final int startPut() throws InterruptedException {
+        putLock.lockInterruptibly();
+        try {
+            while (count.get() == length) {
+                notFull.await();
+            }
+        } catch (InterruptedException e) {
+            putLock.unlock();
+            throw e;
+        }
+        return tail;
+    }
+
+    // Publishes the item written into the slot from startPut and unlocks; at capacity 0 first
+    // waits until a consumer took it
+    protected final void finishPut() throws InterruptedException {
+        int c;
+        try {
+            // The slot was written before the count is incremented, so a consumer seeing the
+            // count sees the item
+            tail = next(tail);
+            c = count.getAndIncrement();
+            if (capacity == 0) {
+                signalNotEmpty();
+                awaitTaken(++putTickets);
+                return;
+            }
+            if (c + 1 < length) {
+                notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0) {
+            signalNotEmpty();
+        }
+    }
+
+    // Waits for an item and returns its slot, holding takeLock; the caller reads the item and
+    // then calls finishTake
+    protected final int startTake() throws InterruptedException {
+        takeLock.lockInterruptibly();
+        try {
+            while (count.get() == 0) {
+                notEmpty.await();
+            }
+        } catch (InterruptedException e) {
+            takeLock.unlock();
+            throw e;
+        }
+        return head;
+    }
+
+    protected final void finishTake() {
+        finishTake(1);
+    }
+
+    // Locks takeLock and returns how many items, up to max, can be taken at once without waiting;
+    // the caller reads them from slot(0) on and calls finishTake with the number read, also if 0
+    protected final int startDrain(int max) {
+        takeLock.lock();
+        return Math.max(0, Math.min(max, count.get()));
+    }
+
+    // The slot of the i-th item from the head, between startTake or startDrain and finishTake
+    protected final int slot(int i) {
+        int s = head + i;
+        return s >= length ? s - length : s;
+    }
+
+    // Removes the n items read since startTake or startDrain and unlocks
+    protected final void finishTake(int n) {
+        int c;
+        try {
+            if (n == 0) {
+                return;
+            }
+            head = slot(n);
+            if (capacity == 0) {
+                takenTickets += n;
+            }
+            c = count.getAndAdd(-n);
+            if (c > n) {
+                notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        // The ring was full, so a producer may be waiting for the freed slot (or for its item to go)
+        if (c == length) {
+            signalNotFull();
+        }
+    }
+
+    // Rendezvous: waits under putLock until a consumer took the item with the ticket; if
+    // interrupted first, the item is taken back. Until then it is the one in the slot, as other
+    // producers wait for the slot to be empty.
+    private void awaitTaken(long ticket) throws InterruptedException {
+        try {
+            while (takenTickets < ticket) {
+                pickedUp.await();
+            }
+        } catch (InterruptedException e) {
+            takeLock.lock();
+            try {
+                if (takenTickets >= ticket) {
+                    // Taken meanwhile: the put succeeded, the interrupt is left for later
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                head = next(head);
+                count.getAndDecrement();
+                putTickets--;
+            } finally {
+                takeLock.unlock();
+            }
+            // The slot is free again, and another producer may be waiting for it
+            notFull.signal();
+            throw e;
+        }
+    }
+
+    private int next(int slot) {
+        return slot + 1 == length ? 0 : slot + 1;
+    }
+
+    private void signalNotEmpty() {
+        takeLock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    private void signalNotFull() {
+        putLock.lock();
+        try {
+            notFull.signal();
+            if (capacity == 0) {
+                pickedUp.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+    }
+}
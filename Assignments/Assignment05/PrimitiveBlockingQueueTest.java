@@ -0,0 +1,94 @@
+package lab06.assignments;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static lab06.assignments.BlockingQueueTest.assertThat;
+import static lab06.assignments.BlockingQueueTest.testThreads;
+
+public class PrimitiveBlockingQueueTest {
+    // A producer interrupted while waiting at a rendezvous takes its item back; a second producer
+    // already waiting for the slot must then get it, and a consumer must receive its item.
+    private static boolean testInterruptedRendezvousProducer(QueueChannel.Put put, QueueChannel.Take take) {
+        List<Thread> threads = new ArrayList<>();
+
+        Thread first = new Thread(() -> {
+            try {
+                put.put(1);
+                throw new AssertionError("Expected the first put to be interrupted.");
+            } catch (InterruptedException e) {
+                // withdrawn, as expected
+            }
+        });
+        threads.add(first);
+
+        threads.add(new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                // Waits for the slot held by the first producer
+                put.put(2);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        threads.add(new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                first.interrupt();
+                Thread.sleep(50);
+                int a = take.take();
+                assertThat(a == 2, String.format("Expected 2, got: %d", a));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    // Items of a rendezvous are passed one by one, each put returning after its take
+    private static boolean testRendezvousOrder(QueueChannel.Put put, QueueChannel.Take take) {
+        int items = 1_000;
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            try {
+                for (int i = 0; i < items; i++) {
+                    put.put(i);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        threads.add(new Thread(() -> {
+            try {
+                for (int i = 0; i < items; i++) {
+                    int a = take.take();
+                    assertThat(a == i, String.format("Expected %d, got: %d", i, a));
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 10; i++) {
+            System.out.println("== Test run " + (i + 1) + " ==");
+            IntBlockingQueue ints = new IntBlockingQueue(0);
+            if (!testInterruptedRendezvousProducer(ints::put, ints::take))
+                break;
+            LongBlockingQueue longs = new LongBlockingQueue(0, true);
+            if (!testInterruptedRendezvousProducer(longs::put, () -> (int) longs.take()))
+                break;
+            IntBlockingQueue order = new IntBlockingQueue(0);
+            if (!testRendezvousOrder(order::put, order::take))
+                break;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package lab06.assignments;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Throughput and heap bytes allocated per element moved, for BlockingQueue<Integer> (every id
+// outside the Integer cache is boxed), IntBlockingQueue and LongBlockingQueue on the heap and
+// off-heap. Allocation is measured per thread with com.sun.management.ThreadMXBean.
+public class PrimitiveQueueBenchmark {
+    private static final int ITEMS = 4_000_000;
+    // Ids start here so that none comes from the Integer cache
+    private static final int FIRST_ID = 1_000;
+    private static final int ROUNDS = 5;
+    private static final int[] THREAD_PAIRS = {1, 4};
+    private static final int CAPACITY = 1024;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("%-24s %8s %14s %14s%n", "queue", "pairs", "ops/s", "bytes/element");
+        for (int pairs : THREAD_PAIRS) {
+            report("BlockingQueue<Integer>", pairs, capacity -> {
+                BlockingQueue<Integer> q = new BlockingQueue<>(capacity);
+                return new QueueChannel(q::put, q::take);
+            });
+            report("IntBlockingQueue heap", pairs, capacity -> {
+                IntBlockingQueue q = new IntBlockingQueue(capacity, false);
+                return new QueueChannel(q::put, q::take);
+            });
+            report("IntBlockingQueue direct", pairs, capacity -> {
+                IntBlockingQueue q = new IntBlockingQueue(capacity, true);
+                return new QueueChannel(q::put, q::take);
+            });
+            report("LongBlockingQueue heap", pairs, capacity -> {
+                LongBlockingQueue q = new LongBlockingQueue(capacity, false);
+                return new QueueChannel(q::put, () -> (int) q.take());
+            });
+            report("LongBlockingQueue direct", pairs, capacity -> {
+                LongBlockingQueue q = new LongBlockingQueue(capacity, true);
+                return new QueueChannel(q::put, () -> (int) q.take());
+            });
+        }
+    }
+
+    private static void report(String name, int pairs, QueueChannel.Factory factory) throws InterruptedException {
+        double bestOps = 0;
+        double bestBytes = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            AtomicLong allocated = new AtomicLong();
+            bestOps = Math.max(bestOps, run(factory.create(CAPACITY), pairs, allocated));
+            bestBytes = Math.min(bestBytes, (double) allocated.get() / (ITEMS / pairs * pairs));
+        }
+        System.out.printf("%-24s %8d %14.0f %14.2f%n", name, pairs, bestOps, bestBytes);
+    }
+
+    // Returns the number of items passed per second; adds the bytes the threads allocated while
+    // passing them to allocated
+    private static double run(QueueChannel channel, int pairs, AtomicLong allocated) throws InterruptedException {
+        int perThread = ITEMS / pairs;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < pairs; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    long before = THREADS.getCurrentThreadAllocatedBytes();
+                    for (int j = 0; j < perThread; j++) {
+                        channel.put().put(FIRST_ID + j);
+                    }
+                    allocated.addAndGet(THREADS.getCurrentThreadAllocatedBytes() - before);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            QueueChannel.Take take = channel.taker().get();
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    long before = THREADS.getCurrentThreadAllocatedBytes();
+                    long sum = 0;
+                    for (int j = 0; j < perThread; j++) {
+                        sum += take.take();
+                    }
+                    allocated.addAndGet(THREADS.getCurrentThreadAllocatedBytes() - before);
+                    if (sum == 0) {
+                        throw new IllegalStateException("nothing taken");
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return (double) perThread * pairs / elapsed * 1e9;
+    }
+}
@@ -0,0 +1,26 @@
+package lab06.assignments;
+
+import java.util.function.Supplier;
+
+// A queue of ints as QueueStressHarness, the benchmarks and the tests drive it, whichever queue is
+// behind it; queues of Integer fit too, their method references box and unbox. Every consumer
+// thread gets its own take side from taker, as a ring buffer needs one worker per thread.
+record QueueChannel(QueueChannel.Put put, Supplier<QueueChannel.Take> taker) {
+    interface Put {
+        void put(int item) throws InterruptedException;
+    }
+
+    interface Take {
+        int take() throws InterruptedException;
+    }
+
+    interface Factory {
+        // null if the queue does not support the capacity
+        QueueChannel create(int capacity);
+    }
+
+    // Consumer threads share take
+    QueueChannel(Put put, Take take) {
+        this(put, () -> take);
+    }
+}
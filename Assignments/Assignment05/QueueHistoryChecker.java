@@ -0,0 +1,105 @@
+package lab06.assignments;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+// Checks that a complete history of a bounded blocking FIFO queue is linearizable. Every value
+// 0..n-1 is put exactly once and every operation has finished. The checks are the bad patterns
+// of Henzinger et al., "Aspect-Oriented Linearizability Proofs" (CONCUR 2013), which decide
+// linearizability of FIFO queue histories with distinct values, plus a capacity check for the
+// bound; each is a sort and a sweep, so the whole check is O(n log n).
+//
+// Times are System.nanoTime() readings taken just before the call (invocation) and just after
+// it returned (response), so each operation took effect somewhere between the two.
+public class QueueHistoryChecker {
+    private final int capacity;
+    private final long[] putInvoked;
+    private final long[] putReturned;
+    private final long[] takeInvoked;
+    private final long[] takeReturned;
+    private final int[] takes;
+
+    public QueueHistoryChecker(int values, int capacity) {
+        this.capacity = capacity;
+        this.putInvoked = new long[values];
+        this.putReturned = new long[values];
+        this.takeInvoked = new long[values];
+        this.takeReturned = new long[values];
+        this.takes = new int[values];
+    }
+
+    public void put(int value, long invoked, long returned) {
+        putInvoked[value] = invoked;
+        putReturned[value] = returned;
+    }
+
+    // Returns false if value was never put, leaving the history broken
+    public boolean take(int value, long invoked, long returned) {
+        if (value < 0 || value >= takes.length) {
+            return false;
+        }
+        takes[value]++;
+        takeInvoked[value] = invoked;
+        takeReturned[value] = returned;
+        return true;
+    }
+
+    // Returns null if the history is linearizable, otherwise a description of one violation
+    public String check() {
+        int n = takes.length;
+        for (int v = 0; v < n; v++) {
+            if (takes[v] != 1) {
+                return "value " + v + " taken " + takes[v] + " times";
+            }
+            if (takeReturned[v] < putInvoked[v]) {
+                return "value " + v + " taken before it was put";
+            }
+        }
+
+        // Capacity: a value is surely in the queue from its put returning until its take is
+        // invoked; more than capacity such values at once cannot fit. For capacity 0 this is the
+        // rendezvous: no put may return before the matching take started.
+        long[] events = new long[2 * n];
+        int e = 0;
+        for (int v = 0; v < n; v++) {
+            if (putReturned[v] < takeInvoked[v]) {
+                // Exits sort before entries at the same time, the intervals are open
+                events[e++] = putReturned[v] << 1 | 1;
+                events[e++] = takeInvoked[v] << 1;
+            }
+        }
+        Arrays.sort(events, 0, e);
+        int inside = 0;
+        for (int i = 0; i < e; i++) {
+            inside += (events[i] & 1) == 1 ? 1 : -1;
+            if (inside > capacity) {
+                return inside + " values surely in a queue of capacity " + capacity;
+            }
+        }
+
+        // Order: if put(x) returned before put(y) was invoked, y must not be taken entirely
+        // before the take of x was invoked. For every x, look at all y put strictly after it
+        // and compare the earliest take among them with the take of x.
+        Integer[] byPutInvoked = IntStream.range(0, n).boxed().toArray(Integer[]::new);
+        Arrays.sort(byPutInvoked, Comparator.comparingLong(v -> putInvoked[v]));
+        Integer[] byPutReturned = IntStream.range(0, n).boxed().toArray(Integer[]::new);
+        Arrays.sort(byPutReturned, Comparator.comparingLong(v -> putReturned[v]));
+
+        int next = n - 1;
+        int earliest = -1;
+        for (int i = n - 1; i >= 0; i--) {
+            int x = byPutReturned[i];
+            while (next >= 0 && putInvoked[byPutInvoked[next]] > putReturned[x]) {
+                int y = byPutInvoked[next--];
+                if (earliest < 0 || takeReturned[y] < takeReturned[earliest]) {
+                    earliest = y;
+                }
+            }
+            if (earliest >= 0 && takeReturned[earliest] < takeInvoked[x]) {
+                return "value " + earliest + " put after value " + x + " but taken before it";
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,153 @@
+package lab06.assignments;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Lets one thread wait on several queues at once, like select over channels: every case is a
+// take from or a put into one queue, and select() performs exactly one case that can proceed,
+// waiting until one can. The queues wake the selector when they stop being empty or full, so
+// nothing is polled; cases are tried round-robin, so a busy queue does not starve the others.
+//
+// Cases stay registered across select() calls until close(). Queues of capacity 0 are not
+// supported, as a rendezvous cannot be offered to several partners at once.
+public class QueueSelector implements AutoCloseable {
+    private final List<Case<?>> cases;
+    // Changes whenever a watched queue stops being empty or full
+    private final AtomicLong version;
+    private final Runnable watcher;
+    // Thread inside select(), to be unparked by the watcher
+    private volatile Thread selecting;
+    private int nextCase;
+
+    public QueueSelector() {
+        this.cases = new ArrayList<>();
+        this.version = new AtomicLong(0);
+        this.watcher = () -> {
+            version.incrementAndGet();
+            LockSupport.unpark(selecting);
+        };
+        this.nextCase = 0;
+    }
+
+    // Adds a case taking an item from queue and passing it to action; returns the case number
+    public synchronized <T> int onTake(BlockingQueue<T> queue, Consumer<? super T> action) {
+        return add(new TakeCase<>(queue, action));
+    }
+
+    // Adds a case putting an item made by supplier into queue; supplier is only called once
+    // there is room for the item. Returns the case number.
+    public synchronized <T> int onPut(BlockingQueue<T> queue, Supplier<? extends T> supplier) {
+        return add(new PutCase<>(queue, supplier));
+    }
+
+    // Performs one case, waiting as long as needed; returns its number
+    public int select() throws InterruptedException {
+        return select(null);
+    }
+
+    // Performs one case if one can proceed within the timeout; returns its number, or -1 if none could
+    public synchronized int select(Duration timeout) throws InterruptedException {
+        if (cases.isEmpty()) {
+            throw new IllegalStateException("no cases");
+        }
+        long deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+        selecting = Thread.currentThread();
+        try {
+            while (true) {
+                // Read before trying, so that a queue changing during the scan is noticed
+                long seen = version.get();
+                int n = cases.size();
+                for (int i = 0; i < n; i++) {
+                    int c = (nextCase + i) % n;
+                    if (cases.get(c).tryPerform()) {
+                        nextCase = (c + 1) % n;
+                        return c;
+                    }
+                }
+
+                while (version.get() == seen) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (timeout == null) {
+                        LockSupport.park(this);
+                    } else {
+                        long nanos = deadline - System.nanoTime();
+                        if (nanos <= 0) {
+                            return -1;
+                        }
+                        LockSupport.parkNanos(this, nanos);
+                    }
+                }
+            }
+        } finally {
+            selecting = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Case<?> c : cases) {
+            c.queue.removeWatcher(watcher);
+        }
+        cases.clear();
+    }
+
+    private int add(Case<?> c) {
+        if (c.queue.getCapacity() == 0) {
+            throw new IllegalArgumentException("queues of capacity 0 cannot be selected on");
+        }
+        c.queue.addWatcher(watcher);
+        cases.add(c);
+        return cases.size() - 1;
+    }
+
+    private abstract static class Case<T> {
+        protected final BlockingQueue<T> queue;
+
+        protected Case(BlockingQueue<T> queue) {
+            this.queue = queue;
+        }
+
+        abstract boolean tryPerform();
+    }
+
+    private static final class TakeCase<T> extends Case<T> {
+        private final Consumer<? super T> action;
+
+        private TakeCase(BlockingQueue<T> queue, Consumer<? super T> action) {
+            super(queue);
+            this.action = action;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        boolean tryPerform() {
+            Object item = queue.takeNow();
+            if (BlockingQueue.isNone(item)) {
+                return false;
+            }
+            action.accept((T) item);
+            return true;
+        }
+    }
+
+    private static final class PutCase<T> extends Case<T> {
+        private final Supplier<? extends T> supplier;
+
+        private PutCase(BlockingQueue<T> queue, Supplier<? extends T> supplier) {
+            super(queue);
+            this.supplier = supplier;
+        }
+
+        @Override
+        boolean tryPerform() {
+            return queue.putNow(supplier);
+        }
+    }
+}
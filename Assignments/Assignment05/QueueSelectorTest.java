@@ -0,0 +1,183 @@
+package lab06.assignments;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static lab06.assignments.BlockingQueueTest.assertThat;
+import static lab06.assignments.BlockingQueueTest.testThreads;
+
+public class QueueSelectorTest {
+    private static boolean testTryAndTimed() {
+        BlockingQueue<Integer> blockingQueue = new BlockingQueue<>(2);
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            try {
+                assertThat(blockingQueue.tryTake() == null, "Expected nothing to take.");
+                long begin = System.nanoTime();
+                assertThat(blockingQueue.poll(Duration.ofMillis(50)) == null, "Expected poll to time out.");
+                assertThat(System.nanoTime() - begin >= 50_000_000, "Expected poll to wait for the timeout.");
+
+                assertThat(blockingQueue.tryPut(1) && blockingQueue.tryPut(2), "Expected room for two items.");
+                assertThat(!blockingQueue.tryPut(3), "Expected a full queue.");
+                begin = System.nanoTime();
+                assertThat(!blockingQueue.offer(3, Duration.ofMillis(50)), "Expected offer to time out.");
+                assertThat(System.nanoTime() - begin >= 50_000_000, "Expected offer to wait for the timeout.");
+
+                assertThat(blockingQueue.tryTake() == 1, "Expected 1 first.");
+                assertThat(blockingQueue.poll(Duration.ZERO) == 2, "Expected 2 second.");
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    private static boolean testTimedRendezvous() {
+        BlockingQueue<Character> blockingQueue = new BlockingQueue<>(0);
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            try {
+                assertThat(!blockingQueue.tryPut('A'), "Expected no consumer waiting.");
+                assertThat(!blockingQueue.offer('A', Duration.ofMillis(20)), "Expected offer to time out.");
+                // The consumer below starts waiting after 50 ms
+                assertThat(blockingQueue.offer('B', Duration.ofMillis(400)), "Expected the consumer to take it.");
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        threads.add(new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                char a = blockingQueue.take();
+                assertThat(a == 'B', String.format("Expected 'B', got: %c", a));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    // Three producers fill queues of different capacities, one selector takes from all of them;
+    // every item must arrive exactly once
+    private static boolean testSelectExactlyOnce() {
+        int perQueue = 10_000;
+        List<BlockingQueue<Integer>> queues = List.of(new BlockingQueue<>(1), new BlockingQueue<>(4), new BlockingQueue<>(64));
+        AtomicIntegerArray seen = new AtomicIntegerArray(queues.size() * perQueue);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int q = 0; q < queues.size(); q++) {
+            int first = q * perQueue;
+            BlockingQueue<Integer> queue = queues.get(q);
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < perQueue; i++) {
+                        queue.put(first + i);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+
+        threads.add(new Thread(() -> {
+            try (QueueSelector selector = new QueueSelector()) {
+                int[] lastSeen = new int[queues.size()];
+                for (int q = 0; q < queues.size(); q++) {
+                    int queueNo = q;
+                    lastSeen[q] = q * perQueue - 1;
+                    selector.onTake(queues.get(q), x -> {
+                        seen.incrementAndGet(x);
+                        assertThat(x == lastSeen[queueNo] + 1, String.format("Expected %d, got: %d", lastSeen[queueNo] + 1, x));
+                        lastSeen[queueNo] = x;
+                    });
+                }
+                for (int i = 0; i < queues.size() * perQueue; i++) {
+                    assertThat(selector.select() >= 0, "Expected a case to be performed.");
+                }
+                for (int i = 0; i < seen.length(); i++) {
+                    assertThat(seen.get(i) == 1, String.format("Expected %d taken once, got: %d", i, seen.get(i)));
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(2000), threads);
+    }
+
+    private static boolean testSelectTimeout() {
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            try (QueueSelector selector = new QueueSelector()) {
+                selector.onTake(new BlockingQueue<Integer>(1), x -> {
+                    throw new AssertionError("Expected nothing to take.");
+                });
+                BlockingQueue<Integer> full = new BlockingQueue<>(1);
+                full.put(0);
+                selector.onPut(full, () -> {
+                    throw new AssertionError("Expected no room to put.");
+                });
+                long begin = System.nanoTime();
+                int c = selector.select(Duration.ofMillis(50));
+                assertThat(c == -1, String.format("Expected -1, got: %d", c));
+                assertThat(System.nanoTime() - begin >= 50_000_000, "Expected select to wait for the timeout.");
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    private static boolean testSelectInterrupted() {
+        List<Thread> threads = new ArrayList<>();
+
+        Thread selecting = new Thread(() -> {
+            try (QueueSelector selector = new QueueSelector()) {
+                selector.onTake(new BlockingQueue<Integer>(1), x -> {
+                    throw new AssertionError("Expected nothing to take.");
+                });
+                selector.select();
+                throw new AssertionError("Expected select to be interrupted.");
+            } catch (InterruptedException e) {
+                // as expected
+            }
+        });
+        threads.add(selecting);
+
+        threads.add(new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                selecting.interrupt();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 10; i++) {
+            System.out.println("== Test run " + (i + 1) + " ==");
+            if (!testTryAndTimed())
+                break;
+            if (!testTimedRendezvous())
+                break;
+            if (!testSelectExactlyOnce())
+                break;
+            if (!testSelectTimeout())
+                break;
+            if (!testSelectInterrupted())
+                break;
+        }
+    }
+}
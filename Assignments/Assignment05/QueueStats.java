@@ -0,0 +1,201 @@
+package lab06.assignments;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Optional instrumentation of a BlockingQueue, passed to its constructor. Counts only what the
+// fast path never does: time spent waiting for room or items, wakeups that found the queue still
+// full or empty, and contended lock acquisitions, so an uncontended put/take pays one null check.
+// Occupancy is sampled by a background thread into a histogram. Every wait is also recorded as a
+// JFR event (lab06.QueueWait) when a flight recording has it enabled.
+//
+// Overhead, measured by BlockingQueueBenchmark: within run-to-run noise at capacity 64, where
+// threads rarely wait, and a few percent at capacity 2, where most operations wait.
+public class QueueStats implements AutoCloseable {
+    public static final int BUCKETS = 10;
+
+    // Shared by all instrumented queues, sampling is cheap
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "queue-stats-sampler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        // Loading a JFR event class takes tens of milliseconds; the first wait would pay for it
+        // while holding a queue lock and count it as waiting
+        new WaitEvent();
+    }
+
+    private final String name;
+    private final Duration samplingPeriod;
+    private boolean attached;
+    private ScheduledFuture<?> sampling;
+
+    // Samples per bucket: empty, then BUCKETS - 2 equal ranges of partial occupancy, then full
+    private final AtomicLongArray occupancy;
+    private final LongAdder putWaits;
+    private final LongAdder putWaitNanos;
+    private final LongAdder takeWaits;
+    private final LongAdder takeWaitNanos;
+    private final LongAdder fullWakeups;
+    private final LongAdder emptyWakeups;
+    private final LongAdder putLockContended;
+    private final LongAdder putLockWaitNanos;
+    private final LongAdder takeLockContended;
+    private final LongAdder takeLockWaitNanos;
+
+    // samplingPeriod of zero turns the occupancy histogram off. Otherwise the shared sampler thread
+    // runs a task for the queue until close(); it holds the element count of the queue weakly, so a
+    // queue dropped without closing its stats is still collected, and its task then cancels itself.
+    public QueueStats(String name, Duration samplingPeriod) {
+        this.name = name;
+        this.samplingPeriod = samplingPeriod;
+        this.occupancy = new AtomicLongArray(BUCKETS);
+        this.putWaits = new LongAdder();
+        this.putWaitNanos = new LongAdder();
+        this.takeWaits = new LongAdder();
+        this.takeWaitNanos = new LongAdder();
+        this.fullWakeups = new LongAdder();
+        this.emptyWakeups = new LongAdder();
+        this.putLockContended = new LongAdder();
+        this.putLockWaitNanos = new LongAdder();
+        this.takeLockContended = new LongAdder();
+        this.takeLockWaitNanos = new LongAdder();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Counters at a moment; every counter is read separately, so they may be slightly apart
+    public record Snapshot(long[] occupancyHistogram,
+                           long putWaits, long putWaitNanos, long takeWaits, long takeWaitNanos,
+                           long fullWakeups, long emptyWakeups,
+                           long putLockContended, long putLockWaitNanos,
+                           long takeLockContended, long takeLockWaitNanos) {
+    }
+
+    public Snapshot snapshot() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = occupancy.get(i);
+        }
+        return new Snapshot(histogram,
+                putWaits.sum(), putWaitNanos.sum(), takeWaits.sum(), takeWaitNanos.sum(),
+                fullWakeups.sum(), emptyWakeups.sum(),
+                putLockContended.sum(), putLockWaitNanos.sum(),
+                takeLockContended.sum(), takeLockWaitNanos.sum());
+    }
+
+    // Stops sampling the occupancy
+    @Override
+    public synchronized void close() {
+        if (sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+    }
+
+    // Called by the queue constructor with its element count, which only the queue holds
+    synchronized void attach(AtomicInteger count, int capacity) {
+        if (attached) {
+            throw new IllegalStateException("stats already attached to a queue");
+        }
+        attached = true;
+        if (samplingPeriod.isZero()) {
+            return;
+        }
+        long period = samplingPeriod.toNanos();
+        WeakReference<AtomicInteger> sampled = new WeakReference<>(count);
+        sampling = SAMPLER.scheduleAtFixedRate(() -> sample(sampled, capacity), period, period, TimeUnit.NANOSECONDS);
+    }
+
+    private void sample(WeakReference<AtomicInteger> sampled, int capacity) {
+        AtomicInteger count = sampled.get();
+        if (count == null) {
+            close();
+            return;
+        }
+        occupancy.incrementAndGet(bucket(count.get(), capacity));
+    }
+
+    static int bucket(int size, int capacity) {
+        if (size <= 0) {
+            return 0;
+        }
+        if (size >= capacity) {
+            return BUCKETS - 1;
+        }
+        return 1 + (int) ((long) (size - 1) * (BUCKETS - 2) / Math.max(1, capacity - 1));
+    }
+
+    WaitEvent beginWait() {
+        WaitEvent wait = new WaitEvent();
+        wait.begin();
+        wait.startNanos = System.nanoTime();
+        return wait;
+    }
+
+    void endWait(boolean put, WaitEvent wait, int sizeAfter) {
+        long nanos = System.nanoTime() - wait.startNanos;
+        if (put) {
+            putWaits.increment();
+            putWaitNanos.add(nanos);
+        } else {
+            takeWaits.increment();
+            takeWaitNanos.add(nanos);
+        }
+        wait.end();
+        if (wait.shouldCommit()) {
+            wait.queue = name;
+            wait.operation = put ? "put" : "take";
+            wait.sizeAfter = sizeAfter;
+            wait.commit();
+        }
+    }
+
+    void wokeUpForNothing(boolean put) {
+        (put ? fullWakeups : emptyWakeups).increment();
+    }
+
+    void lockContended(boolean put, long nanos) {
+        if (put) {
+            putLockContended.increment();
+            putLockWaitNanos.add(nanos);
+        } else {
+            takeLockContended.increment();
+            takeLockWaitNanos.add(nanos);
+        }
+    }
+
+    // A put or take that had to wait, from the start of the wait to its end
+    @Name("lab06.QueueWait")
+    @Label("Queue Wait")
+    @Category("Queues")
+    static class WaitEvent extends Event {
+        @Label("Queue")
+        String queue;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Size After")
+        int sizeAfter;
+
+        // Not recorded, JFR skips transient fields
+        transient long startNanos;
+    }
+}
@@ -0,0 +1,356 @@
+package lab06.assignments;
+
+import java.time.Duration;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import static lab06.assignments.BlockingQueueTest.assertThat;
+import static lab06.assignments.BlockingQueueTest.testThreads;
+
+public class QueueStatsTest {
+    private static final long MILLIS = 1_000_000;
+
+    // Items whose iterator sleeps before handing out each of them and before reporting the end,
+    // so that putAll holds the put lock meanwhile without waiting for room
+    private static <T> Collection<T> slowBatch(List<T> items, long millis) {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<T> iterator() {
+                Iterator<T> it = items.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        if (!it.hasNext()) {
+                            sleep(millis);
+                            return false;
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public T next() {
+                        sleep(millis);
+                        return it.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return items.size();
+            }
+        };
+    }
+
+    // Target of drainTo adding to into slowly, so that drainTo holds the take lock meanwhile
+    private static <T> Collection<T> slowTarget(List<T> into, long millis) {
+        return new AbstractCollection<>() {
+            @Override
+            public boolean add(T item) {
+                sleep(millis);
+                return into.add(item);
+            }
+
+            @Override
+            public Iterator<T> iterator() {
+                return into.iterator();
+            }
+
+            @Override
+            public int size() {
+                return into.size();
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean testBucket() {
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            int last = QueueStats.BUCKETS - 1;
+            assertThat(QueueStats.bucket(0, 10) == 0, "Expected an empty queue in the first bucket.");
+            assertThat(QueueStats.bucket(10, 10) == last, "Expected a full queue in the last bucket.");
+            assertThat(QueueStats.bucket(1, 10) == 1, "Expected one item in the first partial bucket.");
+            assertThat(QueueStats.bucket(9, 10) == last - 1, "Expected one free slot in the last partial bucket.");
+            assertThat(QueueStats.bucket(0, 1) == 0 && QueueStats.bucket(1, 1) == last,
+                    "Expected capacity 1 to be only empty or full.");
+            assertThat(QueueStats.bucket(0, 0) == 0, "Expected capacity 0 to be empty.");
+            assertThat(QueueStats.bucket(1, 2) == 1, "Expected capacity 2 to use the first partial bucket.");
+            int capacity = 1000;
+            int previous = 1;
+            for (int size = 1; size < capacity; size++) {
+                int b = QueueStats.bucket(size, capacity);
+                assertThat(b == previous || b == previous + 1,
+                        String.format("Expected bucket %d or %d for %d, got: %d", previous, previous + 1, size, b));
+                previous = b;
+            }
+            assertThat(previous == last - 1, String.format("Expected bucket %d for %d, got: %d",
+                    last - 1, capacity - 1, previous));
+        }));
+
+        // The first use of QueueStats loads its JFR event class
+        return testThreads(Duration.ofMillis(1000), threads);
+    }
+
+    // A put on a full queue and a take on an empty one each count one wait, as long as it lasted
+    private static boolean testWaits() {
+        QueueStats stats = new QueueStats("waits", Duration.ZERO);
+        BlockingQueue<Character> blockingQueue = new BlockingQueue<>(1, false, stats);
+        List<Thread> threads = new ArrayList<>();
+
+        Thread producer = new Thread(() -> {
+            try {
+                blockingQueue.put('A');
+                // Waits until the consumer takes 'A'
+                blockingQueue.put('B');
+                Thread.sleep(150);
+                blockingQueue.put('C');
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        threads.add(producer);
+
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                blockingQueue.take();
+                // Leaves the producer time to put 'B'
+                Thread.sleep(50);
+                blockingQueue.take();
+                // Waits until the producer puts 'C'
+                blockingQueue.take();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        threads.add(consumer);
+
+        threads.add(new Thread(() -> {
+            try {
+                producer.join();
+                consumer.join();
+                QueueStats.Snapshot s = stats.snapshot();
+                assertThat(s.putWaits() == 1, String.format("Expected 1 put wait, got: %d", s.putWaits()));
+                assertThat(s.takeWaits() == 1, String.format("Expected 1 take wait, got: %d", s.takeWaits()));
+                assertThat(s.putWaitNanos() >= 50 * MILLIS && s.takeWaitNanos() >= 50 * MILLIS,
+                        "Expected the waits to last until the other side came.");
+                assertThat(s.fullWakeups() == 0 && s.emptyWakeups() == 0, "Expected no wakeups for nothing.");
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    // A producer woken for a slot that another producer filled first counts a full wakeup
+    private static boolean testFullWakeup() {
+        QueueStats stats = new QueueStats("full", Duration.ZERO);
+        BlockingQueue<Character> blockingQueue = new BlockingQueue<>(1, false, stats);
+        List<Thread> threads = new ArrayList<>();
+
+        Thread waiting = new Thread(() -> {
+            try {
+                blockingQueue.put('A');
+                // Waits for room, is woken when 'A' is taken and finds 'B' in its place
+                blockingQueue.put('C');
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        threads.add(waiting);
+
+        Thread batch = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                // Holds the put lock until 150 ms, past the take below, and puts 'B' at 100 ms
+                blockingQueue.putAll(slowBatch(List.of('B'), 50));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        threads.add(batch);
+
+        threads.add(new Thread(() -> {
+            try {
+                Thread.sleep(75);
+                // Its wakeup of the waiting producer is delayed by the batch holding the put lock
+                char a = blockingQueue.take();
+                assertThat(a == 'A', String.format("Expected 'A', got: %c", a));
+                Thread.sleep(100);
+                a = blockingQueue.take();
+                assertThat(a == 'B', String.format("Expected 'B', got: %c", a));
+                a = blockingQueue.take();
+                assertThat(a == 'C', String.format("Expected 'C', got: %c", a));
+                waiting.join();
+                batch.join();
+                QueueStats.Snapshot s = stats.snapshot();
+                assertThat(s.fullWakeups() == 1, String.format("Expected 1 full wakeup, got: %d", s.fullWakeups()));
+                assertThat(s.putWaits() == 1, String.format("Expected 1 put wait, got: %d", s.putWaits()));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    // A consumer woken for an item that another consumer took first counts an empty wakeup
+    private static boolean testEmptyWakeup() {
+        QueueStats stats = new QueueStats("empty", Duration.ZERO);
+        BlockingQueue<Character> blockingQueue = new BlockingQueue<>(1, false, stats);
+        List<Thread> threads = new ArrayList<>();
+
+        Thread waiting = new Thread(() -> {
+            try {
+                // Woken when the batch below ends, after 'A' has been drained
+                char a = blockingQueue.take();
+                assertThat(a == 'B', String.format("Expected 'B', got: %c", a));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        threads.add(waiting);
+
+        threads.add(new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                // Puts 'A' at 100 ms and only signals consumers at 150 ms
+                blockingQueue.putAll(slowBatch(List.of('A'), 50));
+                Thread.sleep(50);
+                blockingQueue.put('B');
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        threads.add(new Thread(() -> {
+            try {
+                Thread.sleep(125);
+                List<Character> drained = new ArrayList<>();
+                int n = blockingQueue.drainTo(drained, 1);
+                assertThat(n == 1 && drained.get(0) == 'A', "Expected to drain 'A'.");
+                waiting.join();
+                QueueStats.Snapshot s = stats.snapshot();
+                assertThat(s.emptyWakeups() == 1, String.format("Expected 1 empty wakeup, got: %d", s.emptyWakeups()));
+                assertThat(s.takeWaits() == 1, String.format("Expected 1 take wait, got: %d", s.takeWaits()));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    // An operation finding its lock held by a batch counts one contended acquisition
+    private static boolean testLockContention() {
+        QueueStats stats = new QueueStats("contention", Duration.ZERO);
+        BlockingQueue<Character> blockingQueue = new BlockingQueue<>(4, false, stats);
+        List<Thread> threads = new ArrayList<>();
+
+        Thread putBatch = new Thread(() -> {
+            try {
+                // Holds the put lock from 0 to 100 ms
+                blockingQueue.putAll(slowBatch(List.of('A'), 50));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        threads.add(putBatch);
+
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(25);
+                blockingQueue.put('B');
+                Thread.sleep(50);
+                QueueStats.Snapshot s = stats.snapshot();
+                assertThat(s.putLockContended() == 1,
+                        String.format("Expected 1 contended put, got: %d", s.putLockContended()));
+                assertThat(s.putLockWaitNanos() >= 50 * MILLIS, "Expected the put to wait for the batch.");
+                assertThat(s.takeLockContended() == 0, "Expected no contended take yet.");
+
+                // Holds the take lock from 150 to 200 ms
+                List<Character> drained = new ArrayList<>();
+                blockingQueue.drainTo(slowTarget(drained, 50), 1);
+                assertThat(drained.equals(List.of('A')), "Expected to drain 'A'.");
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        threads.add(producer);
+
+        threads.add(new Thread(() -> {
+            try {
+                Thread.sleep(175);
+                char a = blockingQueue.take();
+                assertThat(a == 'B', String.format("Expected 'B', got: %c", a));
+                putBatch.join();
+                producer.join();
+                QueueStats.Snapshot s = stats.snapshot();
+                assertThat(s.takeLockContended() == 1,
+                        String.format("Expected 1 contended take, got: %d", s.takeLockContended()));
+                assertThat(s.putWaits() == 0 && s.takeWaits() == 0, "Expected no waits for room or items.");
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    // A full queue is sampled into the last bucket, and close() stops the sampling
+    private static boolean testOccupancy() {
+        QueueStats stats = new QueueStats("occupancy", Duration.ofMillis(1));
+        BlockingQueue<Character> blockingQueue = new BlockingQueue<>(2, false, stats);
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            try {
+                blockingQueue.put('A');
+                blockingQueue.put('B');
+                Thread.sleep(100);
+                stats.close();
+                long[] histogram = stats.snapshot().occupancyHistogram();
+                long last = histogram[QueueStats.BUCKETS - 1];
+                assertThat(last > 50, String.format("Expected samples of the full queue, got: %d", last));
+                Thread.sleep(50);
+                assertThat(stats.snapshot().occupancyHistogram()[QueueStats.BUCKETS - 1] == last,
+                        "Expected no samples after close().");
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(300), threads);
+    }
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 10; i++) {
+            System.out.println("== Test run " + (i + 1) + " ==");
+            if (!testBucket())
+                break;
+            if (!testWaits())
+                break;
+            if (!testFullWakeup())
+                break;
+            if (!testEmptyWakeup())
+                break;
+            if (!testLockContention())
+                break;
+            if (!testOccupancy())
+                break;
+        }
+    }
+}
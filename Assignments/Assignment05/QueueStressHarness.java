@@ -0,0 +1,253 @@
+package lab06.assignments;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stress test and benchmark of the blocking queues that does not depend on timing: producers
+// and consumers run to fixed counts, every operation is timestamped, and the resulting history
+// is checked for linearizability by QueueHistoryChecker, so a slow machine can only make a run
+// slower, never fail it. Threads yield at points drawn from a seeded generator to vary the
+// interleavings; the seed is printed and can be passed back to rerun the same inputs.
+//
+// Usage: QueueStressHarness [--bench] [--seed S] [producers consumers capacity itemsPerProducer]
+// Without the four numbers a matrix of configurations is run, every queue variant in each.
+// --bench turns the yields off, for throughput and latency figures.
+public class QueueStressHarness {
+    private static final int[] PRODUCERS = {1, 4};
+    private static final int[] CONSUMERS = {1, 4};
+    private static final int[] CAPACITIES = {0, 1, 4, 64};
+    private static final int ITEMS_PER_PRODUCER = 20_000;
+    // One operation in YIELD_ONE_IN is preceded by Thread.yield()
+    private static final int YIELD_ONE_IN = 16;
+    // A run making no progress for this long is reported as hung, the only use of time here
+    private static final long HANG_MILLIS = 60_000;
+
+    private record Variant(String name, QueueChannel.Factory factory) {
+    }
+
+    private static final List<Variant> VARIANTS = List.of(
+            new Variant("BlockingQueue", capacity -> {
+                BlockingQueue<Integer> q = new BlockingQueue<>(capacity);
+                return new QueueChannel(q::put, q::take);
+            }),
+            new Variant("BlockingQueue fair", capacity -> {
+                BlockingQueue<Integer> q = new BlockingQueue<>(capacity, true);
+                return new QueueChannel(q::put, q::take);
+            }),
+            new Variant("IntBlockingQueue", capacity -> {
+                IntBlockingQueue q = new IntBlockingQueue(capacity);
+                return new QueueChannel(q::put, q::take);
+            }),
+            new Variant("LongBlockingQueue direct", capacity -> {
+                LongBlockingQueue q = new LongBlockingQueue(capacity, true);
+                return new QueueChannel(q::put, () -> (int) q.take());
+            }),
+            new Variant("RingBuffer blocking", capacity -> {
+                if (capacity == 0 || Integer.bitCount(capacity) != 1) {
+                    return null;
+                }
+                RingBuffer<Integer> ring = new RingBuffer<>(capacity, new WaitStrategy.Blocking());
+                RingBuffer.Stage stage = ring.newStage();
+                return new QueueChannel(ring::put, () -> stage.<Integer>newWorker()::take);
+            }));
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean bench = false;
+        long seed = System.nanoTime();
+        List<Integer> numbers = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--bench" -> bench = true;
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> numbers.add(Integer.parseInt(args[i]));
+            }
+        }
+        System.out.println("seed " + seed);
+
+        List<int[]> configs = new ArrayList<>();
+        if (numbers.size() == 4) {
+            configs.add(new int[]{numbers.get(0), numbers.get(1), numbers.get(2), numbers.get(3)});
+        } else {
+            for (int capacity : CAPACITIES) {
+                for (int producers : PRODUCERS) {
+                    for (int consumers : CONSUMERS) {
+                        configs.add(new int[]{producers, consumers, capacity, ITEMS_PER_PRODUCER});
+                    }
+                }
+            }
+        }
+
+        System.out.printf("%-26s %3s %3s %4s %12s %9s %9s %9s %9s %9s %9s  %s%n", "queue", "P", "C", "cap", "ops/s",
+                "put p50", "p99", "p99.9", "take p50", "p99", "p99.9", "history");
+        int failures = 0;
+        for (int[] config : configs) {
+            for (Variant variant : VARIANTS) {
+                QueueChannel channel = variant.factory().create(config[2]);
+                if (channel == null) {
+                    continue;
+                }
+                Result r = run(channel, config[0], config[1], config[2], config[3], bench ? 0 : YIELD_ONE_IN, seed);
+                if (r.violation() != null) {
+                    failures++;
+                }
+                System.out.printf("%-26s %3d %3d %4d %12.0f %9d %9d %9d %9d %9d %9d  %s%n",
+                        variant.name(), config[0], config[1], config[2], r.opsPerSecond(),
+                        percentile(r.putNanos(), 0.5), percentile(r.putNanos(), 0.99),
+                        percentile(r.putNanos(), 0.999), percentile(r.takeNanos(), 0.5),
+                        percentile(r.takeNanos(), 0.99), percentile(r.takeNanos(), 0.999),
+                        r.violation() == null ? "linearizable" : "VIOLATION: " + r.violation());
+            }
+        }
+        System.out.println(failures == 0 ? "all histories linearizable" : failures + " runs failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    // Latencies in nanoseconds, sorted
+    private record Result(double opsPerSecond, long[] putNanos, long[] takeNanos, String violation) {
+    }
+
+    private static Result run(QueueChannel channel, int producers, int consumers, int capacity, int perProducer,
+                              int yieldOneIn, long seed) throws InterruptedException {
+        int total = producers * perProducer;
+        // Per thread: values and times, written by that thread only and read after join
+        long[][] putTimes = new long[producers][2 * perProducer];
+        int[][] taken = new int[consumers][];
+        long[][] takeTimes = new long[consumers][];
+        AtomicLong progress = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed * 31 + id);
+                long[] times = putTimes[id];
+                try {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        if (yieldOneIn > 0 && random.nextInt(yieldOneIn) == 0) {
+                            Thread.yield();
+                        }
+                        long invoked = System.nanoTime();
+                        channel.put().put(id * perProducer + i);
+                        times[2 * i] = invoked;
+                        times[2 * i + 1] = System.nanoTime();
+                        progress.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    // stopped as hung
+                }
+            }, "producer-" + p));
+        }
+        for (int c = 0; c < consumers; c++) {
+            int id = c;
+            int count = total / consumers + (c < total % consumers ? 1 : 0);
+            taken[c] = new int[count];
+            takeTimes[c] = new long[2 * count];
+            QueueChannel.Take take = channel.taker().get();
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed * 31 + producers + id);
+                int[] values = taken[id];
+                long[] times = takeTimes[id];
+                try {
+                    start.await();
+                    for (int i = 0; i < values.length; i++) {
+                        if (yieldOneIn > 0 && random.nextInt(yieldOneIn) == 0) {
+                            Thread.yield();
+                        }
+                        long invoked = System.nanoTime();
+                        values[i] = take.take();
+                        times[2 * i] = invoked;
+                        times[2 * i + 1] = System.nanoTime();
+                        progress.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    // stopped as hung
+                }
+            }, "consumer-" + c));
+        }
+
+        for (Thread t : threads) {
+            t.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        if (!awaitAll(threads, progress)) {
+            return new Result(0, new long[1], new long[1], "no progress for " + HANG_MILLIS + " ms");
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        QueueHistoryChecker checker = new QueueHistoryChecker(total, capacity);
+        long[] putNanos = new long[total];
+        int k = 0;
+        for (int p = 0; p < producers; p++) {
+            for (int i = 0; i < perProducer; i++) {
+                long[] times = putTimes[p];
+                checker.put(p * perProducer + i, times[2 * i], times[2 * i + 1]);
+                putNanos[k++] = times[2 * i + 1] - times[2 * i];
+            }
+        }
+        long[] takeNanos = new long[total];
+        k = 0;
+        String violation = null;
+        for (int c = 0; c < consumers; c++) {
+            for (int i = 0; i < taken[c].length; i++) {
+                long[] times = takeTimes[c];
+                if (!checker.take(taken[c][i], times[2 * i], times[2 * i + 1])) {
+                    violation = "value " + taken[c][i] + " was never put";
+                }
+                takeNanos[k++] = times[2 * i + 1] - times[2 * i];
+            }
+        }
+        if (violation == null) {
+            violation = checker.check();
+        }
+        Arrays.sort(putNanos);
+        Arrays.sort(takeNanos);
+        return new Result(2.0 * total / elapsed * 1e9, putNanos, takeNanos, violation);
+    }
+
+    // Joins the threads; if none of them progresses for HANG_MILLIS, prints their stacks, stops
+    // them and returns false
+    private static boolean awaitAll(List<Thread> threads, AtomicLong progress) throws InterruptedException {
+        long seen = -1;
+        for (Thread t : threads) {
+            while (t.isAlive()) {
+                t.join(HANG_MILLIS);
+                if (!t.isAlive()) {
+                    break;
+                }
+                long now = progress.get();
+                if (now == seen) {
+                    ThreadInfo[] infos = ManagementFactory.getThreadMXBean().dumpAllThreads(false, false);
+                    for (ThreadInfo info : infos) {
+                        if (info.getThreadName().startsWith("producer-") || info.getThreadName().startsWith("consumer-")) {
+                            System.out.print(info);
+                        }
+                    }
+                    for (Thread u : threads) {
+                        u.interrupt();
+                    }
+                    for (Thread u : threads) {
+                        u.join();
+                    }
+                    return false;
+                }
+                seen = now;
+            }
+        }
+        return true;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p * sorted.length))];
+    }
+}
@@ -0,0 +1,252 @@
+package lab06.assignments;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+// Bounded multi-producer multi-consumer ring of preallocated slots, after the LMAX Disruptor.
+// Producers claim slot numbers (sequences) with a CAS on the cursor, fill the slot and publish it.
+// Consumers are grouped in stages: every published item is processed by exactly one worker of
+// every stage, and a stage only sees an item once all stages it depends on are done with it.
+// Producers wait for the last stages before reusing a slot. Every counter lives on its own cache
+// line, and waiting is left to a WaitStrategy.
+//
+// Typical use as a queue: one stage, producers call put and workers of the stage call take.
+// For a pipeline, create the stages before the first item is claimed, with newStage(upstream).
+public class RingBuffer<T> {
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Object[] slots;
+    private final int mask;
+    private final int shift;
+    // Round of the ring (sequence >>> shift) in which each slot was last published
+    private final int[] published;
+    private final WaitStrategy waitStrategy;
+
+    // Highest sequence claimed by a producer
+    private final Sequence cursor;
+    // Lower bound of the progress of the last stages, saves looking at them on every claim
+    private final Sequence gatingCache;
+    // Stages no other stage depends on, producers wait for them
+    private volatile Stage[] lastStages;
+
+    // Slots hold references passed to put or set, or null
+    public RingBuffer(int capacity, WaitStrategy waitStrategy) {
+        this(capacity, () -> null, waitStrategy);
+    }
+
+    // Slots hold objects made by factory up front, for producers to fill in place
+    public RingBuffer(int capacity, Supplier<? extends T> factory, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2");
+        }
+        this.slots = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = factory.get();
+        }
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfTrailingZeros(capacity);
+        this.published = new int[capacity];
+        Arrays.fill(published, -1);
+        this.waitStrategy = waitStrategy;
+        this.cursor = new Sequence(-1);
+        this.gatingCache = new Sequence(-1);
+        this.lastStages = new Stage[0];
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    // Creates a stage processing every item after all upstream stages did
+    public synchronized Stage newStage(Stage... upstream) {
+        if (cursor.get() >= 0) {
+            throw new IllegalStateException("stages must be created before the first item");
+        }
+        for (Stage s : upstream) {
+            if (s.ring != this) {
+                throw new IllegalArgumentException("stage of another ring buffer");
+            }
+        }
+        Stage stage = new Stage(this, upstream.clone());
+        Stage[] last = Arrays.stream(lastStages)
+                .filter(s -> Arrays.stream(upstream).noneMatch(u -> u == s))
+                .toArray(Stage[]::new);
+        last = Arrays.copyOf(last, last.length + 1);
+        last[last.length - 1] = stage;
+        lastStages = last;
+        return stage;
+    }
+
+    // Claims the next slot, waiting until the last stages are done with its previous item.
+    // Every claimed sequence must be published, or the consumers stop at it.
+    public long next() throws InterruptedException {
+        while (true) {
+            long current = cursor.get();
+            long n = current + 1;
+            long wrapPoint = n - slots.length;
+            if (wrapPoint > gatingCache.get()) {
+                long gating = minLastStages();
+                gatingCache.set(gating);
+                if (wrapPoint > gating) {
+                    waitStrategy.await(() -> wrapPoint <= minLastStages());
+                    continue;
+                }
+            }
+            if (cursor.compareAndSet(current, n)) {
+                return n;
+            }
+        }
+    }
+
+    public void publish(long sequence) {
+        PUBLISHED.setVolatile(published, (int) sequence & mask, (int) (sequence >>> shift));
+        waitStrategy.signalAll();
+    }
+
+    public void put(T item) throws InterruptedException {
+        long sequence = next();
+        set(sequence, item);
+        publish(sequence);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long sequence) {
+        return (T) slots[(int) sequence & mask];
+    }
+
+    // Publishing the slot afterwards makes the write visible to the consumers
+    public void set(long sequence, T item) {
+        slots[(int) sequence & mask] = item;
+    }
+
+    private boolean isPublished(long sequence) {
+        return (int) PUBLISHED.getVolatile(published, (int) sequence & mask) == (int) (sequence >>> shift);
+    }
+
+    private long minLastStages() {
+        Stage[] last = lastStages;
+        if (last.length == 0) {
+            return -1;
+        }
+        long min = Long.MAX_VALUE;
+        for (Stage s : last) {
+            min = Math.min(min, s.progress());
+        }
+        return min;
+    }
+
+    // Consumers processing every item once, each item by one of its workers
+    public static final class Stage {
+        private final RingBuffer<?> ring;
+        private final Stage[] upstream;
+        // Highest sequence claimed by a worker of this stage
+        private final Sequence workSequence;
+        // Per worker: one less than the item it holds, or Long.MAX_VALUE if it holds none
+        private volatile Sequence[] workers;
+
+        private Stage(RingBuffer<?> ring, Stage[] upstream) {
+            this.ring = ring;
+            this.upstream = upstream;
+            this.workSequence = new Sequence(-1);
+            this.workers = new Sequence[0];
+        }
+
+        // The worker takes items of the type of the ring buffer the stage belongs to
+        @SuppressWarnings("unchecked")
+        public <T> Worker<T> newWorker() {
+            return new Worker<>((RingBuffer<T>) ring, this);
+        }
+
+        // Every item up to the result is done by this stage: all are claimed, and none is held
+        private long progress() {
+            long min = workSequence.get();
+            for (Sequence w : workers) {
+                min = Math.min(min, w.get());
+            }
+            return min;
+        }
+
+        private boolean isAvailable(long sequence) {
+            if (upstream.length == 0) {
+                return ring.isPublished(sequence);
+            }
+            for (Stage s : upstream) {
+                if (s.progress() < sequence) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private synchronized void addWorker(Sequence w) {
+            Sequence[] ws = Arrays.copyOf(workers, workers.length + 1);
+            ws[ws.length - 1] = w;
+            workers = ws;
+        }
+
+        private synchronized void removeWorker(Sequence w) {
+            workers = Arrays.stream(workers).filter(s -> s != w).toArray(Sequence[]::new);
+        }
+    }
+
+    // Consumer thread of a stage, not shared between threads. The item returned by next() is held
+    // until done() or the following next(), the stages after this one and the producers wait for it.
+    public static final class Worker<T> implements AutoCloseable {
+        private static final long NONE = Long.MAX_VALUE;
+
+        private final RingBuffer<T> ring;
+        private final Stage stage;
+        private final Sequence sequence;
+        // Sequence claimed but not returned yet, after an interrupted wait
+        private long pending = -1;
+
+        private Worker(RingBuffer<T> ring, Stage stage) {
+            this.ring = ring;
+            this.stage = stage;
+            this.sequence = new Sequence(NONE);
+            stage.addWorker(sequence);
+        }
+
+        // Marks the held item done, claims the next one and waits until it is available
+        public long next() throws InterruptedException {
+            long n = pending;
+            if (n < 0) {
+                do {
+                    n = stage.workSequence.get() + 1;
+                    // Set before the claim, so that the stage never looks past an item being processed
+                    sequence.set(n - 1);
+                } while (!stage.workSequence.compareAndSet(n - 1, n));
+                pending = n;
+                ring.waitStrategy.signalAll();
+            }
+
+            if (!stage.isAvailable(n)) {
+                long claimed = n;
+                ring.waitStrategy.await(() -> stage.isAvailable(claimed));
+            }
+            pending = -1;
+            return n;
+        }
+
+        public void done() {
+            sequence.set(NONE);
+            ring.waitStrategy.signalAll();
+        }
+
+        // next() and done() for a ring used as a queue; the slot keeps the reference until it is reused
+        public T take() throws InterruptedException {
+            T item = ring.get(next());
+            done();
+            return item;
+        }
+
+        // Leaves the stage; an item claimed by an interrupted next() is then never processed
+        @Override
+        public void close() {
+            stage.removeWorker(sequence);
+            ring.waitStrategy.signalAll();
+        }
+    }
+}
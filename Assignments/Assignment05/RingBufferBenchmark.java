@@ -0,0 +1,213 @@
+package lab06.assignments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Throughput and latency of RingBuffer with every wait strategy, against BlockingQueue and the
+// java.util.concurrent queues of the same capacity. Busy spinning is skipped when there are more
+// threads than cores, as every handoff would then wait for a time slice.
+public class RingBufferBenchmark {
+    private static final int CAPACITY = 1024;
+    private static final int ITEMS = 1_000_000;
+    private static final int ROUND_TRIPS = 20_000;
+    private static final int ROUNDS = 5;
+    private static final int[] THREAD_PAIRS = {1, 4, 16};
+    private static final int PIPELINE_STAGES = 3;
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    public static void main(String[] args) throws InterruptedException {
+        List<String> names = List.of("BlockingQueue", "ArrayBlockingQueue", "LinkedBlockingQueue",
+                "ring busy-spin", "ring yielding", "ring parking", "ring blocking");
+
+        System.out.printf("%-20s %8s %14s%n", "queue", "pairs", "ops/s");
+        for (String name : names) {
+            for (int pairs : THREAD_PAIRS) {
+                if (name.equals("ring busy-spin") && 2 * pairs > CORES) {
+                    System.out.printf("%-20s %8d %14s%n", name, pairs, "-");
+                    continue;
+                }
+                double best = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    best = Math.max(best, throughput(channel(name), pairs));
+                }
+                System.out.printf("%-20s %8d %14.0f%n", name, pairs, best);
+            }
+        }
+
+        System.out.printf("%n%-20s %12s %12s %12s%n", "queue", "p50 rtt ns", "p99 rtt ns", "p99.9 rtt ns");
+        for (String name : names) {
+            if (name.equals("ring busy-spin") && CORES < 2) {
+                System.out.printf("%-20s %12s %12s %12s%n", name, "-", "-", "-");
+                continue;
+            }
+            long[] rtt = pingPong(channel(name), channel(name));
+            System.out.printf("%-20s %12d %12d %12d%n", name,
+                    percentile(rtt, 0.5), percentile(rtt, 0.99), percentile(rtt, 0.999));
+        }
+
+        System.out.printf("%n%-20s %8s %14s%n", "pipeline", "stages", "items/s");
+        for (String name : List.of("ring yielding", "ring parking", "ring blocking")) {
+            double best = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                best = Math.max(best, pipeline(strategy(name)));
+            }
+            System.out.printf("%-20s %8d %14.0f%n", name, PIPELINE_STAGES, best);
+        }
+    }
+
+    private static QueueChannel channel(String name) {
+        switch (name) {
+            case "BlockingQueue" -> {
+                BlockingQueue<Integer> q = new BlockingQueue<>(CAPACITY);
+                return new QueueChannel(q::put, q::take);
+            }
+            case "ArrayBlockingQueue" -> {
+                ArrayBlockingQueue<Integer> q = new ArrayBlockingQueue<>(CAPACITY);
+                return new QueueChannel(q::put, q::take);
+            }
+            case "LinkedBlockingQueue" -> {
+                LinkedBlockingQueue<Integer> q = new LinkedBlockingQueue<>(CAPACITY);
+                return new QueueChannel(q::put, q::take);
+            }
+            default -> {
+                RingBuffer<Integer> ring = new RingBuffer<>(CAPACITY, strategy(name));
+                RingBuffer.Stage stage = ring.newStage();
+                return new QueueChannel(ring::put, () -> stage.<Integer>newWorker()::take);
+            }
+        }
+    }
+
+    private static WaitStrategy strategy(String name) {
+        return switch (name) {
+            case "ring busy-spin" -> new WaitStrategy.BusySpin();
+            case "ring yielding" -> new WaitStrategy.Yielding();
+            case "ring parking" -> new WaitStrategy.Parking();
+            case "ring blocking" -> new WaitStrategy.Blocking();
+            default -> throw new IllegalArgumentException(name);
+        };
+    }
+
+    // Returns the number of items passed per second
+    private static double throughput(QueueChannel channel, int pairs) throws InterruptedException {
+        int perThread = ITEMS / pairs;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < pairs; i++) {
+            QueueChannel.Take take = channel.taker().get();
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < perThread; j++) {
+                        channel.put().put(j);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < perThread; j++) {
+                        take.take();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        return timed(start, threads, (double) perThread * pairs);
+    }
+
+    // Round trip times of one item sent to an echo thread and back
+    private static long[] pingPong(QueueChannel there, QueueChannel back) throws InterruptedException {
+        QueueChannel.Take echoTake = there.taker().get();
+        QueueChannel.Take take = back.taker().get();
+        Thread echo = new Thread(() -> {
+            try {
+                for (int i = 0; i < ROUND_TRIPS; i++) {
+                    back.put().put(echoTake.take());
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        echo.start();
+
+        long[] rtt = new long[ROUND_TRIPS];
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            long begin = System.nanoTime();
+            there.put().put(i);
+            take.take();
+            rtt[i] = System.nanoTime() - begin;
+        }
+        echo.join();
+        Arrays.sort(rtt);
+        return rtt;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p * sorted.length))];
+    }
+
+    // One producer and a chain of stages with one worker each, items are updated in place
+    private static double pipeline(WaitStrategy strategy) throws InterruptedException {
+        RingBuffer<long[]> ring = new RingBuffer<>(CAPACITY, () -> new long[1], strategy);
+        List<RingBuffer.Stage> stages = new ArrayList<>();
+        for (int i = 0; i < PIPELINE_STAGES; i++) {
+            stages.add(i == 0 ? ring.newStage() : ring.newStage(stages.get(i - 1)));
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            try {
+                start.await();
+                for (int j = 0; j < ITEMS; j++) {
+                    long sequence = ring.next();
+                    ring.get(sequence)[0] = j;
+                    ring.publish(sequence);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+        for (int i = 0; i < PIPELINE_STAGES; i++) {
+            RingBuffer.Worker<long[]> worker = stages.get(i).newWorker();
+            int before = i;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < ITEMS; j++) {
+                        long[] item = ring.get(worker.next());
+                        // Every stage before this one added 1
+                        if (item[0] != j + before) {
+                            throw new IllegalStateException("stage " + before + " saw " + item[0] + " for item " + j);
+                        }
+                        item[0]++;
+                        worker.done();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        return timed(start, threads, ITEMS);
+    }
+
+    private static double timed(CountDownLatch start, List<Thread> threads, double items) throws InterruptedException {
+        for (Thread t : threads) {
+            t.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return items / elapsed * 1e9;
+    }
+}
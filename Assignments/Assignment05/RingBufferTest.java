@@ -0,0 +1,261 @@
+package lab06.assignments;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static lab06.assignments.BlockingQueueTest.assertThat;
+import static lab06.assignments.BlockingQueueTest.testThreads;
+
+public class RingBufferTest {
+    // Workers of a stage stop at the first negative item, producers add one per worker at the end
+    private static final int END = -1;
+
+    // Takes items until END, checking that every upstream stage is done with each item before
+    // marking it seen by this stage
+    private static Thread worker(RingBuffer<Integer> ring, RingBuffer.Stage stage,
+                                 AtomicIntegerArray seen, AtomicIntegerArray... upstream) {
+        return new Thread(() -> {
+            try (RingBuffer.Worker<Integer> worker = stage.newWorker()) {
+                while (true) {
+                    int x = ring.get(worker.next());
+                    if (x == END) {
+                        break;
+                    }
+                    for (AtomicIntegerArray u : upstream) {
+                        assertThat(u.get(x) == 1, String.format("Expected %d done upstream first.", x));
+                    }
+                    seen.incrementAndGet(x);
+                }
+                worker.done();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    // Two producers feed a diamond of stages through a ring much smaller than the number of items:
+    // a and c take every item, b takes it after both. Every item must be seen once per stage.
+    private static boolean testStagesExactlyOnce(WaitStrategy waitStrategy) {
+        int items = 10_000;
+        int workersPerStage = 2;
+        RingBuffer<Integer> ring = new RingBuffer<>(8, waitStrategy);
+        RingBuffer.Stage a = ring.newStage();
+        RingBuffer.Stage c = ring.newStage();
+        RingBuffer.Stage b = ring.newStage(a, c);
+        AtomicIntegerArray seenA = new AtomicIntegerArray(items);
+        AtomicIntegerArray seenB = new AtomicIntegerArray(items);
+        AtomicIntegerArray seenC = new AtomicIntegerArray(items);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 2; p++) {
+            int first = p * items / 2;
+            producers.add(new Thread(() -> {
+                try {
+                    for (int i = first; i < first + items / 2; i++) {
+                        ring.put(i);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < workersPerStage; w++) {
+            workers.add(worker(ring, a, seenA));
+            workers.add(worker(ring, c, seenC));
+            workers.add(worker(ring, b, seenB, seenA, seenC));
+        }
+
+        List<Thread> threads = new ArrayList<>(producers);
+        threads.addAll(workers);
+        threads.add(new Thread(() -> {
+            try {
+                for (Thread t : producers) {
+                    t.join();
+                }
+                for (int w = 0; w < workersPerStage; w++) {
+                    ring.put(END);
+                }
+                for (Thread t : workers) {
+                    t.join();
+                }
+                for (int i = 0; i < items; i++) {
+                    assertThat(seenA.get(i) == 1 && seenB.get(i) == 1 && seenC.get(i) == 1,
+                            String.format("Expected %d seen once per stage, got: %d, %d, %d",
+                                    i, seenA.get(i), seenB.get(i), seenC.get(i)));
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(2000), threads);
+    }
+
+    // A producer must not reuse a slot whose item is still held by a worker of the last stage
+    private static boolean testWrapAroundGating(WaitStrategy waitStrategy) {
+        int capacity = 4;
+        RingBuffer<Character> ring = new RingBuffer<>(capacity, waitStrategy);
+        RingBuffer.Stage stage = ring.newStage();
+        AtomicBoolean wrapped = new AtomicBoolean(false);
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            try {
+                for (int i = 0; i < capacity; i++) {
+                    ring.put((char) ('A' + i));
+                }
+                try {
+                    ring.newStage();
+                    throw new AssertionError("Expected no new stage after the first item.");
+                } catch (IllegalStateException e) {
+                    // as expected
+                }
+                // Reuses the slot of 'A', which the worker below holds for 100 ms
+                ring.put('E');
+                wrapped.set(true);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        threads.add(new Thread(() -> {
+            try (RingBuffer.Worker<Character> worker = stage.newWorker()) {
+                Thread.sleep(50);
+                char x = ring.get(worker.next());
+                assertThat(x == 'A', String.format("Expected 'A', got: %c", x));
+                Thread.sleep(100);
+                assertThat(!wrapped.get(), "Expected the producer to wait for the held slot.");
+                assertThat(ring.get(0) == 'A', "Expected the held slot intact.");
+                for (int i = 1; i <= capacity; i++) {
+                    x = ring.get(worker.next());
+                    assertThat(x == 'A' + i, String.format("Expected %c, got: %c", 'A' + i, x));
+                }
+                worker.done();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    // A worker interrupted while waiting keeps the sequence it claimed: the following next()
+    // returns it, while another worker of the stage gets the item after it
+    private static boolean testInterruptedNext(WaitStrategy waitStrategy) {
+        RingBuffer<Character> ring = new RingBuffer<>(4, waitStrategy);
+        RingBuffer.Stage stage = ring.newStage();
+        List<Thread> threads = new ArrayList<>();
+
+        Thread first = new Thread(() -> {
+            try (RingBuffer.Worker<Character> worker = stage.newWorker()) {
+                try {
+                    worker.next();
+                    throw new AssertionError("Expected the first next() to be interrupted.");
+                } catch (InterruptedException e) {
+                    // the sequence stays claimed, as expected
+                }
+                long n = worker.next();
+                assertThat(n == 0, String.format("Expected sequence 0 again, got: %d", n));
+                char x = ring.get(n);
+                assertThat(x == 'A', String.format("Expected 'A', got: %c", x));
+                worker.done();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        threads.add(first);
+
+        threads.add(new Thread(() -> {
+            try (RingBuffer.Worker<Character> worker = stage.newWorker()) {
+                Thread.sleep(50);
+                long n = worker.next();
+                assertThat(n == 1, String.format("Expected sequence 1, got: %d", n));
+                char x = ring.get(n);
+                assertThat(x == 'B', String.format("Expected 'B', got: %c", x));
+                worker.done();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        threads.add(new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                first.interrupt();
+                Thread.sleep(50);
+                ring.put('A');
+                ring.put('B');
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    // A closed worker no longer holds back producers, even with an item it never marked done
+    private static boolean testClose(WaitStrategy waitStrategy) {
+        int capacity = 2;
+        int items = 10;
+        RingBuffer<Integer> ring = new RingBuffer<>(capacity, waitStrategy);
+        RingBuffer.Stage stage = ring.newStage();
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            try (RingBuffer.Worker<Integer> worker = stage.newWorker()) {
+                int x = ring.get(worker.next());
+                assertThat(x == 0, String.format("Expected 0, got: %d", x));
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        threads.add(new Thread(() -> {
+            try (RingBuffer.Worker<Integer> worker = stage.newWorker()) {
+                Thread.sleep(20);
+                for (int i = 1; i < items; i++) {
+                    int x = ring.get(worker.next());
+                    assertThat(x == i, String.format("Expected %d, got: %d", i, x));
+                }
+                worker.done();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        threads.add(new Thread(() -> {
+            try {
+                for (int i = 0; i < items; i++) {
+                    ring.put(i);
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return testThreads(Duration.ofMillis(500), threads);
+    }
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 10; i++) {
+            System.out.println("== Test run " + (i + 1) + " ==");
+            for (WaitStrategy waitStrategy : List.of(new WaitStrategy.Yielding(), new WaitStrategy.Parking(),
+                    new WaitStrategy.Blocking())) {
+                if (!testStagesExactlyOnce(waitStrategy))
+                    return;
+                if (!testWrapAroundGating(waitStrategy))
+                    return;
+                if (!testInterruptedNext(waitStrategy))
+                    return;
+                if (!testClose(waitStrategy))
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package lab06.assignments;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+// Counter of a RingBuffer, alone on its cache line. The value sits in the middle of an array,
+// so the padding around it cannot be reordered away and two sequences written by different
+// threads never share a line.
+public class Sequence {
+    private static final VarHandle VALUE = MethodHandles.arrayElementVarHandle(long[].class);
+    // 7 longs on each side cover a 64-byte line whatever the alignment of the array
+    private static final int PADDING = 7;
+
+    private final long[] cells = new long[2 * PADDING + 1];
+
+    public Sequence(long initial) {
+        VALUE.setVolatile(cells, PADDING, initial);
+    }
+
+    public long get() {
+        return (long) VALUE.getVolatile(cells, PADDING);
+    }
+
+    public void set(long value) {
+        VALUE.setVolatile(cells, PADDING, value);
+    }
+
+    public boolean compareAndSet(long expected, long value) {
+        return VALUE.compareAndSet(cells, PADDING, expected, value);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
@@ -0,0 +1,462 @@
+package lab06.assignments;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.locks.LockSupport;
+
+// Rendezvous channel without locks: put waits for a take and take waits for a put.
+// Threads that cannot be matched right away are kept in a dual structure holding only waiting
+// producers or only waiting consumers; an arriving thread of the other kind pairs with one of
+// them by a single CAS and wakes exactly that thread (Scherer, Lea, Scott, "Scalable
+// Synchronous Queues"). The unfair mode keeps waiters on a stack (last come, first served,
+// which keeps the hottest threads busy), the fair mode on a FIFO queue. Null items are allowed.
+public class SynchronousChannel<T> {
+    // Stands for a null item, so that a null reference can mean "no item"
+    private static final Object NULL_ITEM = new Object();
+    // Iterations a waiter at the front spins before parking, when another CPU may match it soon
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
+
+    private final Transferer transferer;
+
+    public SynchronousChannel() {
+        this(false);
+    }
+
+    public SynchronousChannel(boolean fair) {
+        this.transferer = fair ? new TransferQueue() : new TransferStack();
+    }
+
+    public void put(T item) throws InterruptedException {
+        if (transferer.transfer(item == null ? NULL_ITEM : item, false, 0) == null) {
+            Thread.interrupted();
+            throw new InterruptedException();
+        }
+    }
+
+    public T take() throws InterruptedException {
+        Object item = transferer.transfer(null, false, 0);
+        if (item == null) {
+            Thread.interrupted();
+            throw new InterruptedException();
+        }
+        return unwrap(item);
+    }
+
+    // Puts the item if a consumer takes it within the timeout (a zero timeout only matches a
+    // consumer already waiting); returns false if none did
+    public boolean offer(T item, Duration timeout) throws InterruptedException {
+        if (transferer.transfer(item == null ? NULL_ITEM : item, true, Math.max(0, timeout.toNanos())) == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    // Takes an item if a producer hands one over within the timeout; returns null if none did,
+    // as for a null item
+    public T poll(Duration timeout) throws InterruptedException {
+        Object item = transferer.transfer(null, true, Math.max(0, timeout.toNanos()));
+        if (item == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            return null;
+        }
+        return unwrap(item);
+    }
+
+    // Adds an item to target if a producer hands one over within the timeout (a zero timeout
+    // only matches a producer already waiting); returns false if none did
+    boolean takeInto(Collection<? super T> target, Duration timeout) throws InterruptedException {
+        Object item = transferer.transfer(null, true, Math.max(0, timeout.toNanos()));
+        if (item == null) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            return false;
+        }
+        target.add(unwrap(item));
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T unwrap(Object item) {
+        return item == NULL_ITEM ? null : (T) item;
+    }
+
+    private interface Transferer {
+        // Puts the item, or takes one if item is null, waiting at most nanos if timed; returns the
+        // item passed, or null if interrupted (the interrupt status is kept) or timed out
+        Object transfer(Object item, boolean timed, long nanos);
+    }
+
+    // Dual stack: the unfair mode
+    private static final class TransferStack implements Transferer {
+        private static final int REQUEST = 0;
+        private static final int DATA = 1;
+        // Set on a node pushed to match the node below it
+        private static final int FULFILLING = 2;
+
+        private static final VarHandle HEAD;
+        private volatile SNode head;
+
+        @Override
+        public Object transfer(Object item, boolean timed, long nanos) {
+            SNode s = null;
+            int mode = item == null ? REQUEST : DATA;
+
+            while (true) {
+                SNode h = head;
+                if (h == null || h.mode == mode) {
+                    if (timed && nanos <= 0) {
+                        // Nothing to match and no time to wait for it
+                        if (h != null && h.isCancelled()) {
+                            HEAD.compareAndSet(this, h, h.next);
+                            continue;
+                        }
+                        return null;
+                    }
+                    // Nothing to match: push a waiting node
+                    s = SNode.of(s, item, h, mode);
+                    if (HEAD.compareAndSet(this, h, s)) {
+                        SNode m = s.awaitMatch(this, timed, nanos);
+                        if (m == s) {
+                            clean(s);
+                            return null;
+                        }
+                        // Help the fulfiller pop both nodes
+                        if ((h = head) != null && h.next == s) {
+                            HEAD.compareAndSet(this, h, s.next);
+                        }
+                        return mode == REQUEST ? m.item : s.item;
+                    }
+                } else if ((h.mode & FULFILLING) == 0) {
+                    // A waiter of the other kind: push a fulfilling node and match it
+                    if (h.isCancelled()) {
+                        HEAD.compareAndSet(this, h, h.next);
+                    } else if (HEAD.compareAndSet(this, h, s = SNode.of(s, item, h, FULFILLING | mode))) {
+                        while (true) {
+                            SNode m = s.next;
+                            if (m == null) {
+                                // All waiters were cancelled, start over with a new node
+                                HEAD.compareAndSet(this, s, null);
+                                s = null;
+                                break;
+                            }
+                            SNode mn = m.next;
+                            if (m.tryMatch(s)) {
+                                HEAD.compareAndSet(this, s, mn);
+                                return mode == REQUEST ? m.item : s.item;
+                            }
+                            // m was cancelled, unlink it
+                            s.casNext(m, mn);
+                        }
+                    }
+                } else {
+                    // Another thread is fulfilling: help it
+                    SNode m = h.next;
+                    if (m == null) {
+                        HEAD.compareAndSet(this, h, null);
+                    } else {
+                        SNode mn = m.next;
+                        if (m.tryMatch(h)) {
+                            HEAD.compareAndSet(this, h, mn);
+                        } else {
+                            h.casNext(m, mn);
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean isFront(SNode s) {
+            SNode h = head;
+            return h == s || h == null || (h.mode & FULFILLING) != 0;
+        }
+
+        // Unlinks the cancelled node s and any cancelled nodes around it
+        private void clean(SNode s) {
+            s.item = null;
+            s.waiter = null;
+
+            SNode past = s.next;
+            if (past != null && past.isCancelled()) {
+                past = past.next;
+            }
+            SNode p;
+            while ((p = head) != null && p != past && p.isCancelled()) {
+                HEAD.compareAndSet(this, p, p.next);
+            }
+            while (p != null && p != past) {
+                SNode n = p.next;
+                if (n != null && n.isCancelled()) {
+                    p.casNext(n, n.next);
+                } else {
+                    p = n;
+                }
+            }
+        }
+
+        static {
+            try {
+                HEAD = MethodHandles.lookup().findVarHandle(TransferStack.class, "head", SNode.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    private static final class SNode {
+        private static final VarHandle NEXT;
+        private static final VarHandle MATCH;
+
+        private volatile SNode next;
+        // The node matched with this one, or this node itself once cancelled
+        private volatile SNode match;
+        private volatile Thread waiter;
+        private Object item;
+        private int mode;
+
+        // Reuses the node of a failed attempt, nobody else has seen it
+        private static SNode of(SNode s, Object item, SNode next, int mode) {
+            if (s == null) {
+                s = new SNode();
+                s.item = item;
+            }
+            s.mode = mode;
+            s.next = next;
+            return s;
+        }
+
+        private boolean casNext(SNode expected, SNode n) {
+            return next == expected && NEXT.compareAndSet(this, expected, n);
+        }
+
+        private boolean tryMatch(SNode s) {
+            if (match == null && MATCH.compareAndSet(this, null, s)) {
+                LockSupport.unpark(waiter);
+                return true;
+            }
+            return match == s;
+        }
+
+        private boolean isCancelled() {
+            return match == this;
+        }
+
+        // Returns the matching node, or this node if interrupted or timed out first
+        private SNode awaitMatch(TransferStack stack, boolean timed, long nanos) {
+            long deadline = timed ? System.nanoTime() + nanos : 0;
+            int spins = stack.isFront(this) ? SPINS : 0;
+            while (true) {
+                // The interrupt status stays set, if matched after all it is left for the caller to notice
+                if (Thread.currentThread().isInterrupted()
+                        || (timed && (nanos = deadline - System.nanoTime()) <= 0)) {
+                    MATCH.compareAndSet(this, null, this);
+                }
+                SNode m = match;
+                if (m != null) {
+                    return m;
+                }
+                if (spins > 0) {
+                    spins = stack.isFront(this) ? spins - 1 : 0;
+                    Thread.onSpinWait();
+                } else if (waiter == null) {
+                    waiter = Thread.currentThread();
+                } else if (timed) {
+                    LockSupport.parkNanos(this, nanos);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        }
+
+        static {
+            try {
+                MethodHandles.Lookup l = MethodHandles.lookup();
+                NEXT = l.findVarHandle(SNode.class, "next", SNode.class);
+                MATCH = l.findVarHandle(SNode.class, "match", SNode.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    // Dual queue: the fair mode
+    private static final class TransferQueue implements Transferer {
+        private static final VarHandle HEAD;
+        private static final VarHandle TAIL;
+
+        // head is a dummy node, the waiters follow it in order of arrival
+        private volatile QNode head;
+        private volatile QNode tail;
+
+        private TransferQueue() {
+            QNode dummy = new QNode(null, false);
+            head = dummy;
+            tail = dummy;
+        }
+
+        @Override
+        public Object transfer(Object item, boolean timed, long nanos) {
+            QNode s = null;
+            boolean isData = item != null;
+
+            while (true) {
+                QNode t = tail;
+                QNode h = head;
+                if (h == t || t.isData == isData) {
+                    // Empty or waiters of the same kind: append a waiting node
+                    QNode tn = t.next;
+                    if (t != tail) {
+                        continue;
+                    }
+                    if (tn != null) {
+                        TAIL.compareAndSet(this, t, tn);
+                        continue;
+                    }
+                    if (timed && nanos <= 0) {
+                        // Nothing to match and no time to wait for it
+                        return null;
+                    }
+                    if (s == null) {
+                        s = new QNode(item, isData);
+                    }
+                    if (!t.casNext(null, s)) {
+                        continue;
+                    }
+                    TAIL.compareAndSet(this, t, s);
+
+                    Object x = s.awaitMatch(this, item, timed, nanos);
+                    if (x == s) {
+                        clean();
+                        return null;
+                    }
+                    if (s.next != s) {
+                        // Still linked: become the new dummy head
+                        advanceHead(t, s);
+                        if (x != null) {
+                            s.item = s;
+                        }
+                        s.waiter = null;
+                    }
+                    return x != null ? x : item;
+                }
+
+                // Waiters of the other kind: match the oldest one
+                QNode m = h.next;
+                if (t != tail || m == null || h != head) {
+                    continue;
+                }
+                Object x = m.item;
+                if (isData == (x != null) || x == m || !m.casItem(x, item)) {
+                    // Already matched or cancelled, dequeue it and retry
+                    advanceHead(h, m);
+                    continue;
+                }
+                advanceHead(h, m);
+                LockSupport.unpark(m.waiter);
+                return x != null ? x : item;
+            }
+        }
+
+        private void advanceHead(QNode h, QNode nh) {
+            if (h == head && HEAD.compareAndSet(this, h, nh)) {
+                // Forget the old head, so that it does not keep the rest of the queue reachable
+                h.next = h;
+            }
+        }
+
+        private boolean isFront(QNode s) {
+            return head.next == s;
+        }
+
+        // Dequeues cancelled nodes from the front; cancelled nodes further on are dequeued when they get there
+        private void clean() {
+            while (true) {
+                QNode h = head;
+                QNode hn = h.next;
+                if (hn == null || hn.item != hn) {
+                    return;
+                }
+                advanceHead(h, hn);
+            }
+        }
+
+        static {
+            try {
+                MethodHandles.Lookup l = MethodHandles.lookup();
+                HEAD = l.findVarHandle(TransferQueue.class, "head", QNode.class);
+                TAIL = l.findVarHandle(TransferQueue.class, "tail", QNode.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    private static final class QNode {
+        private static final VarHandle NEXT;
+        private static final VarHandle ITEM;
+
+        private volatile QNode next;
+        // The item, set to null when a data node is taken or to an item when a request is served;
+        // this node itself once cancelled
+        private volatile Object item;
+        private volatile Thread waiter;
+        private final boolean isData;
+
+        private QNode(Object item, boolean isData) {
+            this.item = item;
+            this.isData = isData;
+        }
+
+        private boolean casNext(QNode expected, QNode n) {
+            return next == expected && NEXT.compareAndSet(this, expected, n);
+        }
+
+        private boolean casItem(Object expected, Object x) {
+            return item == expected && ITEM.compareAndSet(this, expected, x);
+        }
+
+        // Returns the item passed, or this node if interrupted or timed out first
+        private Object awaitMatch(TransferQueue queue, Object e, boolean timed, long nanos) {
+            long deadline = timed ? System.nanoTime() + nanos : 0;
+            int spins = queue.isFront(this) ? SPINS : 0;
+            while (true) {
+                // The interrupt status stays set, if matched after all it is left for the caller to notice
+                if (Thread.currentThread().isInterrupted()
+                        || (timed && (nanos = deadline - System.nanoTime()) <= 0)) {
+                    casItem(e, this);
+                }
+                Object x = item;
+                if (x != e) {
+                    return x;
+                }
+                if (spins > 0) {
+                    spins--;
+                    Thread.onSpinWait();
+                } else if (waiter == null) {
+                    waiter = Thread.currentThread();
+                } else if (timed) {
+                    LockSupport.parkNanos(this, nanos);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        }
+
+        static {
+            try {
+                MethodHandles.Lookup l = MethodHandles.lookup();
+                NEXT = l.findVarHandle(QNode.class, "next", QNode.class);
+                ITEM = l.findVarHandle(QNode.class, "item", Object.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package lab06.assignments;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+// How threads of a RingBuffer wait: consumers for items, producers for free slots.
+// The strategies trade CPU for latency, from BusySpin (lowest latency, burns a core per waiting
+// thread) to Blocking (no CPU while waiting, a lock and a wakeup per handoff).
+public interface WaitStrategy {
+    // Returns once ready is true; ready is evaluated again after every signal or spin
+    void await(BooleanSupplier ready) throws InterruptedException;
+
+    // Called after every change that may make the condition of a waiting thread true
+    void signalAll();
+
+    // Spins on the condition; only sensible with a free core for every waiting thread
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            while (!ready.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Thread.onSpinWait();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    // Spins for a while, then gives the core away between checks
+    final class Yielding implements WaitStrategy {
+        private static final int SPINS = 100;
+
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            int spins = SPINS;
+            while (!ready.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (spins > 0) {
+                    spins--;
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    // Spins, then yields, then sleeps for short periods: little CPU when idle, no signalling cost
+    final class Parking implements WaitStrategy {
+        private static final int SPINS = 100;
+        private static final int YIELDS = 100;
+        private static final long PARK_NANOS = 1_000;
+
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            int tries = SPINS + YIELDS;
+            while (!ready.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (tries > YIELDS) {
+                    tries--;
+                    Thread.onSpinWait();
+                } else if (tries > 0) {
+                    tries--;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+            }
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    // Waits on a condition variable; signalAll only takes the lock when some thread is waiting
+    final class Blocking implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger(0);
+
+        @Override
+        public void await(BooleanSupplier ready) throws InterruptedException {
+            if (ready.getAsBoolean()) {
+                return;
+            }
+            // Registered before checking again, so a signaller either sees the waiter or the
+            // waiter sees its change
+            waiters.incrementAndGet();
+            try {
+                lock.lockInterruptibly();
+                try {
+                    while (!ready.getAsBoolean()) {
+                        changed.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            if (waiters.get() == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
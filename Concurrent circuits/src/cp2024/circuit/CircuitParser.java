@@ -0,0 +1,389 @@
+package cp2024.circuit;
+
+import cp2024.solution.CompactCircuit;
+import cp2024.solution.CompactCircuitWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Single-pass parser for the expression syntax of the README, one circuit per line:
+ * <pre>
+ * true, false, NOT a, NOT(a), AND(a1, a2, ...), OR(a1, a2, ...), IF(a, b, c), GTx(a1, ...), LTx(a1, ...)
+ * </pre>
+ * Input is read byte by byte straight from a ByteBuffer (ASCII), without building intermediate
+ * strings or tokens, and nesting is handled with explicit stacks, so arbitrarily deep circuits
+ * can be parsed. Blank lines are skipped. Leaves become instant SleepyLeafNodes.
+ */
+public final class CircuitParser {
+    private static final int INITIAL_DEPTH = 64;
+
+    private final ByteBuffer in;
+    private int pos;
+    private final int end;
+
+    // Open operators: their type, threshold, number of arguments parsed so far and whether
+    // they are written with parentheses (only NOT may be written without them)
+    private NodeType[] types = new NodeType[INITIAL_DEPTH];
+    private int[] thresholds = new int[INITIAL_DEPTH];
+    private int[] argCounts = new int[INITIAL_DEPTH];
+    private boolean[] parenthesized = new boolean[INITIAL_DEPTH];
+    private int depth = 0;
+
+    private CircuitParser(ByteBuffer in, int from, int to) {
+        this.in = in;
+        this.pos = from;
+        this.end = to;
+    }
+
+    /** Parses every circuit between the buffer's position and limit. */
+    public static List<Circuit> parse(ByteBuffer in) {
+        CircuitSink sink = new CircuitSink();
+        new CircuitParser(in, in.position(), in.limit()).parseAll(sink);
+        return sink.circuits;
+    }
+
+    /** Parses every circuit directly into the writer and returns the ids of their roots. */
+    public static int[] parse(ByteBuffer in, CompactCircuitWriter writer) {
+        CompactSink sink = new CompactSink(writer);
+        new CircuitParser(in, in.position(), in.limit()).parseAll(sink);
+        return Arrays.copyOf(sink.roots, sink.rootCount);
+    }
+
+    /** Maps the file and parses it in up to {@code parallelism} chunks split at line boundaries. */
+    public static List<Circuit> parseFile(Path file, int parallelism)
+            throws IOException, InterruptedException {
+        ByteBuffer in = map(file);
+        return parseChunks(in, parallelism, (from, to) -> {
+            CircuitSink sink = new CircuitSink();
+            new CircuitParser(in, from, to).parseAll(sink);
+            return sink.circuits;
+        });
+    }
+
+    /**
+     * Like parseFile, but every chunk is parsed straight into a compact image, with
+     * DeclaredLeafNode leaves, and no intermediate CircuitNode objects are created.
+     */
+    public static List<CompactCircuit> parseFileCompact(Path file, int parallelism)
+            throws IOException, InterruptedException {
+        ByteBuffer in = map(file);
+        return parseChunks(in, parallelism, (from, to) -> {
+            CompactCircuitWriter writer = new CompactCircuitWriter();
+            CompactSink sink = new CompactSink(writer);
+            new CircuitParser(in, from, to).parseAll(sink);
+
+            List<CompactCircuit> circuits = new ArrayList<>(sink.rootCount);
+            if (sink.rootCount > 0) {
+                ByteBuffer image = writer.toByteBuffer(sink.roots[0]);
+                for (int i = 0; i < sink.rootCount; i++) {
+                    circuits.add(CompactCircuit.wrap(image, sink.roots[i]));
+                }
+            }
+            return circuits;
+        });
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Expression file exceeds 2 GiB: " + file);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private interface ChunkParser<T> {
+        List<T> parse(int from, int to) throws IOException;
+    }
+
+    private static <T> List<T> parseChunks(ByteBuffer in, int parallelism, ChunkParser<T> parser)
+            throws IOException, InterruptedException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive.");
+        }
+
+        // Chunk boundaries are moved forward to the next line break, so no circuit is split
+        int size = in.limit();
+        int chunks = Math.max(1, Math.min(parallelism, size / (64 * 1024)));
+        int[] bounds = new int[chunks + 1];
+        for (int i = 1; i < chunks; i++) {
+            int b = Math.max(bounds[i - 1], (int) ((long) size * i / chunks));
+            while (b < size && in.get(b) != '\n') b++;
+            bounds[i] = b;
+        }
+        bounds[chunks] = size;
+
+        if (chunks == 1) return parser.parse(0, size);
+
+        ExecutorService executor = Executors.newFixedThreadPool(chunks);
+        try {
+            List<Future<List<T>>> futures = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                int from = bounds[i];
+                int to = bounds[i + 1];
+                futures.add(executor.submit(() -> parser.parse(from, to)));
+            }
+
+            List<T> result = new ArrayList<>();
+            for (Future<List<T>> f : futures) {
+                result.addAll(f.get());
+            }
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof IOException ioe) throw ioe;
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Receives the parsed nodes bottom-up, in the order in which they are closed
+    private interface Sink {
+        void leaf(boolean value);
+
+        // The node's arguments are the last argCount values produced
+        void node(NodeType type, int threshold, int argCount);
+
+        // The single value produced since the previous call is a complete circuit
+        void circuit();
+    }
+
+    private void parseAll(Sink sink) {
+        while (true) {
+            skipBlank();
+            if (pos >= end) return;
+            parseCircuit(sink);
+            sink.circuit();
+        }
+    }
+
+    private void parseCircuit(Sink sink) {
+        depth = 0;
+        while (true) {
+            // Expecting an expression
+            skipSpaces();
+            if (pos >= end) throw error("Unexpected end of input");
+            byte b = in.get(pos);
+            if (b == 't' && matchWord("true")) {
+                sink.leaf(true);
+            } else if (b == 'f' && matchWord("false")) {
+                sink.leaf(false);
+            } else {
+                openOperator();
+                continue;
+            }
+
+            // A value was produced: close every operator it completes
+            while (true) {
+                if (depth == 0) {
+                    skipSpaces();
+                    if (pos < end && in.get(pos) != '\n') throw error("Expected end of line");
+                    return;
+                }
+                int top = depth - 1;
+                argCounts[top]++;
+                if (!parenthesized[top]) {
+                    depth--;
+                    sink.node(NodeType.NOT, 0, 1);
+                    continue;
+                }
+
+                skipSpaces();
+                byte c = pos < end ? in.get(pos) : 0;
+                if (c == ',') {
+                    pos++;
+                    break;
+                } else if (c == ')') {
+                    pos++;
+                    depth--;
+                    try {
+                        sink.node(types[top], thresholds[top], argCounts[top]);
+                    } catch (IllegalArgumentException e) {
+                        throw error(e.getMessage());
+                    }
+                } else {
+                    throw error("Expected ',' or ')'");
+                }
+            }
+        }
+    }
+
+    private void openOperator() {
+        NodeType type;
+        int threshold = 0;
+        if (matchPrefix("AND")) {
+            type = NodeType.AND;
+        } else if (matchPrefix("OR")) {
+            type = NodeType.OR;
+        } else if (matchPrefix("IF")) {
+            type = NodeType.IF;
+        } else if (matchPrefix("NOT")) {
+            type = NodeType.NOT;
+        } else if (matchPrefix("GT") || matchPrefix("LT")) {
+            type = in.get(pos - 2) == 'G' ? NodeType.GT : NodeType.LT;
+            threshold = parseThreshold();
+        } else {
+            throw error("Expected an expression");
+        }
+
+        skipSpaces();
+        boolean paren = pos < end && in.get(pos) == '(';
+        if (paren) {
+            pos++;
+        } else if (type != NodeType.NOT || (pos < end && isWordByte(in.get(pos - 1)))) {
+            // Only NOT may take its argument without parentheses, separated by a space
+            throw error("Expected '('");
+        }
+
+        if (depth == types.length) {
+            int capacity = depth * 2;
+            types = Arrays.copyOf(types, capacity);
+            thresholds = Arrays.copyOf(thresholds, capacity);
+            argCounts = Arrays.copyOf(argCounts, capacity);
+            parenthesized = Arrays.copyOf(parenthesized, capacity);
+        }
+        types[depth] = type;
+        thresholds[depth] = threshold;
+        argCounts[depth] = 0;
+        parenthesized[depth] = paren;
+        depth++;
+    }
+
+    private int parseThreshold() {
+        int start = pos;
+        long value = 0;
+        while (pos < end) {
+            byte b = in.get(pos);
+            if (b < '0' || b > '9') break;
+            value = value * 10 + (b - '0');
+            if (value > Integer.MAX_VALUE) throw error("Threshold too large");
+            pos++;
+        }
+        if (pos == start) throw error("Expected a threshold");
+        return (int) value;
+    }
+
+    // Consumes the word if the input continues with it and it is not a prefix of a longer word
+    private boolean matchWord(String word) {
+        if (!matchPrefix(word)) return false;
+        if (pos < end && isWordByte(in.get(pos))) {
+            pos -= word.length();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean matchPrefix(String word) {
+        int n = word.length();
+        if (end - pos < n) return false;
+        for (int i = 0; i < n; i++) {
+            if (in.get(pos + i) != word.charAt(i)) return false;
+        }
+        pos += n;
+        return true;
+    }
+
+    private static boolean isWordByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+    }
+
+    private void skipSpaces() {
+        while (pos < end) {
+            byte b = in.get(pos);
+            if (b != ' ' && b != '\t' && b != '\r') return;
+            pos++;
+        }
+    }
+
+    private void skipBlank() {
+        while (pos < end) {
+            byte b = in.get(pos);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') return;
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Parse error at byte " + pos + ": " + message);
+    }
+
+    private static final class CircuitSink implements Sink {
+        private final List<Circuit> circuits = new ArrayList<>();
+        private CircuitNode[] values = new CircuitNode[INITIAL_DEPTH];
+        private int top = 0;
+
+        @Override
+        public void leaf(boolean value) {
+            push(CircuitNode.mk(value));
+        }
+
+        @Override
+        public void node(NodeType type, int threshold, int argCount) {
+            CircuitNode[] args = Arrays.copyOfRange(values, top - argCount, top);
+            Arrays.fill(values, top - argCount, top, null);
+            top -= argCount;
+            push(type == NodeType.GT || type == NodeType.LT
+                    ? CircuitNode.mk(type, threshold, args)
+                    : CircuitNode.mk(type, args));
+        }
+
+        @Override
+        public void circuit() {
+            circuits.add(new Circuit(values[--top]));
+            values[top] = null;
+        }
+
+        private void push(CircuitNode n) {
+            if (top == values.length) values = Arrays.copyOf(values, top * 2);
+            values[top++] = n;
+        }
+    }
+
+    private static final class CompactSink implements Sink {
+        private final CompactCircuitWriter writer;
+        private int[] values = new int[INITIAL_DEPTH];
+        private int top = 0;
+        private int[] roots = new int[INITIAL_DEPTH];
+        private int rootCount = 0;
+
+        private CompactSink(CompactCircuitWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void leaf(boolean value) {
+            push(writer.addLeaf(value, Duration.ZERO));
+        }
+
+        @Override
+        public void node(NodeType type, int threshold, int argCount) {
+            top -= argCount;
+            push(writer.addNode(type, threshold, values, top, argCount));
+        }
+
+        @Override
+        public void circuit() {
+            if (rootCount == roots.length) roots = Arrays.copyOf(roots, rootCount * 2);
+            roots[rootCount++] = values[--top];
+        }
+
+        private void push(int id) {
+            if (top == values.length) values = Arrays.copyOf(values, top * 2);
+            values[top++] = id;
+        }
+    }
+}
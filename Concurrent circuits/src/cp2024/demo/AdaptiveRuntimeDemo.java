@@ -0,0 +1,79 @@
+package cp2024.demo;
+
+import cp2024.circuit.*;
+import cp2024.solution.ParallelCircuitSolver;
+import cp2024.solution.SolverRuntime;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a blocking workload (sleeping leaves) and then a CPU-bound one (spinning leaves) on an
+ * adaptive SolverRuntime, printing the decisions of its controller as they are made.
+ */
+public class AdaptiveRuntimeDemo {
+    private static final int CIRCUITS = 40;
+    private static final int WIDTH = 64;
+    private static final long REPORT_INTERVAL = 250L; // in milliseconds
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        SolverRuntime runtime = SolverRuntime.adaptive(cores * 64, SolverRuntime.UNBOUNDED);
+        ParallelCircuitSolver solver = new ParallelCircuitSolver(runtime);
+
+        Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    SolverRuntime.Metrics m = runtime.getMetrics();
+                    System.out.printf("limit %4d  threads %4d  blocking ratio %.2f  resizes %d%n",
+                            m.threadLimit(), m.poolSize(), m.blockingRatio(), m.resizes());
+                    Thread.sleep(REPORT_INTERVAL);
+                }
+            } catch (InterruptedException e) {
+                // End of the demo
+            }
+        });
+        reporter.start();
+
+        System.out.println("Blocking workload (" + cores + " cores):");
+        run(solver, () -> CircuitNode.mk(true, Duration.ofMillis(20)));
+        System.out.println("CPU-bound workload:");
+        run(solver, () -> new SpinningLeafNode(2_000_000));
+
+        reporter.interrupt();
+        reporter.join();
+        runtime.shutdown();
+    }
+
+    private static void run(CircuitSolver solver, java.util.function.Supplier<CircuitNode> leaf) throws InterruptedException {
+        long start = System.nanoTime();
+        List<CircuitValue> values = new ArrayList<>();
+        for (int i = 0; i < CIRCUITS; i++) {
+            CircuitNode[] leaves = new CircuitNode[WIDTH];
+            for (int j = 0; j < WIDTH; j++) leaves[j] = leaf.get();
+            values.add(solver.solve(new Circuit(CircuitNode.mk(NodeType.AND, leaves))));
+        }
+        for (CircuitValue v : values) v.getValue();
+        System.out.println("Done in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // Leaf computing its value on the CPU
+    private static class SpinningLeafNode extends LeafNode {
+        private final int iterations;
+
+        private SpinningLeafNode(int iterations) {
+            this.iterations = iterations;
+        }
+
+        @Override
+        public boolean getValue() throws InterruptedException {
+            long x = iterations;
+            for (int i = 0; i < iterations; i++) {
+                x = x * 6364136223846793005L + 1442695040888963407L;
+            }
+            if (Thread.interrupted()) throw new InterruptedException();
+            return x != 0 || iterations >= 0;
+        }
+    }
+}
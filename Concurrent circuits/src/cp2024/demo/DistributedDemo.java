@@ -0,0 +1,110 @@
+package cp2024.demo;
+
+import cp2024.circuit.*;
+import cp2024.solution.DeclaredLeafNode;
+import cp2024.solution.DistributedCircuitSolver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Starts a few CircuitWorker processes on this machine (over TCP and a Unix domain socket),
+ * solves random circuits with a DistributedCircuitSolver and checks the values against the
+ * SequentialSolver.
+ */
+public class DistributedDemo {
+    private static final int TCP_WORKERS = 2;
+    private static final int CIRCUITS = 20;
+    private static final int DEPTH = 6;
+    private static final long CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<SocketAddress> addresses = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < TCP_WORKERS; i++) {
+            int port = freePort();
+            addresses.add(new InetSocketAddress("127.0.0.1", port));
+            names.add("tcp:127.0.0.1:" + port);
+        }
+        Path socket = Files.createTempDirectory("circuits").resolve("worker.sock");
+        addresses.add(UnixDomainSocketAddress.of(socket));
+        names.add("unix:" + socket);
+
+        List<Process> processes = new ArrayList<>();
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        try {
+            for (String name : names) {
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        "cp2024.solution.CircuitWorker", name).inheritIO().start());
+            }
+
+            DistributedCircuitSolver solver = connect(addresses);
+            SequentialSolver sequential = new SequentialSolver();
+            Random random = new Random(42);
+            int mismatches = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < CIRCUITS; i++) {
+                Circuit c = new Circuit(randomNode(random, DEPTH));
+                boolean expected = sequential.solve(c).getValue();
+                boolean actual = solver.solve(c).getValue();
+                if (expected != actual) mismatches++;
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            solver.stop();
+
+            System.out.println("Solved " + CIRCUITS + " circuits on " + names.size() + " workers in "
+                    + millis + " ms (including the sequential reference), mismatches: " + mismatches);
+        } finally {
+            for (Process p : processes) p.destroy();
+            for (Process p : processes) p.waitFor();
+            Files.deleteIfExists(socket);
+            Files.deleteIfExists(socket.getParent());
+        }
+    }
+
+    // The workers need a moment to start listening
+    private static DistributedCircuitSolver connect(List<SocketAddress> addresses) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return new DistributedCircuitSolver(addresses);
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) throw e;
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static CircuitNode randomNode(Random random, int depth) {
+        if (depth == 0 || random.nextInt(8) == 0) {
+            // Only leaves whose value and delay the solver can read are shipped to the workers
+            return new DeclaredLeafNode(random.nextBoolean(), Duration.ofMillis(random.nextInt(3)));
+        }
+        int count = 2 + random.nextInt(3);
+        CircuitNode[] args = new CircuitNode[count];
+        for (int i = 0; i < count; i++) args[i] = randomNode(random, depth - 1);
+        return switch (random.nextInt(6)) {
+            case 0 -> CircuitNode.mk(NodeType.AND, args);
+            case 1 -> CircuitNode.mk(NodeType.OR, args);
+            case 2 -> CircuitNode.mk(NodeType.GT, random.nextInt(count), args);
+            case 3 -> CircuitNode.mk(NodeType.LT, 1 + random.nextInt(count), args);
+            case 4 -> CircuitNode.mk(NodeType.NOT, args[0]);
+            default -> CircuitNode.mk(NodeType.IF, args[0], args[1], randomNode(random, depth - 1));
+        };
+    }
+}
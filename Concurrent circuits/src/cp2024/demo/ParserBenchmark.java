@@ -0,0 +1,100 @@
+package cp2024.demo;
+
+import cp2024.circuit.*;
+import cp2024.solution.CompactCircuit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/** Measures CircuitParser throughput in MB/s on a generated file of random circuits. */
+public class ParserBenchmark {
+    private static final int CIRCUITS = 20_000;
+    private static final int MAX_DEPTH = 7;
+    private static final int ROUNDS = 5;
+
+    private static final Random random = new Random(42);
+
+    private static void writeExpression(StringBuilder sb, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            sb.append(random.nextBoolean() ? "true" : "false");
+            return;
+        }
+        int arity = 2 + random.nextInt(3);
+        switch (random.nextInt(6)) {
+            case 0 -> {
+                sb.append("NOT ");
+                writeExpression(sb, depth - 1);
+                return;
+            }
+            case 1 -> {
+                sb.append("IF");
+                arity = 3;
+            }
+            case 2 -> sb.append("AND");
+            case 3 -> sb.append("OR");
+            case 4 -> sb.append("GT").append(random.nextInt(arity + 1));
+            default -> sb.append("LT").append(random.nextInt(arity + 1));
+        }
+        sb.append('(');
+        for (int i = 0; i < arity; i++) {
+            if (i > 0) sb.append(", ");
+            writeExpression(sb, depth - 1);
+        }
+        sb.append(')');
+    }
+
+    private interface Parse {
+        int run(Path file) throws IOException, InterruptedException;
+    }
+
+    private static void measure(String name, Path file, Parse parse) throws IOException, InterruptedException {
+        double megabytes = Files.size(file) / 1e6;
+        double best = 0;
+        int circuits = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            circuits = parse.run(file);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            best = Math.max(best, megabytes / seconds);
+        }
+        System.out.printf("%-28s %8.1f MB/s (%d circuits)%n", name, best, circuits);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path file = Files.createTempFile("circuits", ".txt");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(file)) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < CIRCUITS; i++) {
+                    sb.setLength(0);
+                    writeExpression(sb, MAX_DEPTH);
+                    out.append(sb).append('\n');
+                }
+            }
+            System.out.printf("Input: %.1f MB%n", Files.size(file) / 1e6);
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            measure("objects, 1 thread", file, f -> CircuitParser.parseFile(f, 1).size());
+            measure("objects, " + cores + " threads", file, f -> CircuitParser.parseFile(f, cores).size());
+            measure("compact, 1 thread", file, f -> CircuitParser.parseFileCompact(f, 1).size());
+            measure("compact, " + cores + " threads", file, f -> CircuitParser.parseFileCompact(f, cores).size());
+
+            // Both representations must describe the same circuits
+            List<Circuit> objects = CircuitParser.parseFile(file, cores);
+            List<CompactCircuit> compact = CircuitParser.parseFileCompact(file, cores);
+            SequentialSolver solver = new SequentialSolver();
+            for (int i = 0; i < objects.size(); i++) {
+                if (solver.solve(objects.get(i)).getValue() != solver.solve(compact.get(i)).getValue()) {
+                    System.out.println("Representations differ on circuit " + i);
+                }
+            }
+            solver.stop();
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
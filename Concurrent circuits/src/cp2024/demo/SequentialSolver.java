@@ -1,87 +1,98 @@
 package cp2024.demo;
 
 import cp2024.circuit.*;
+import cp2024.solution.SequentialEvaluator;
 
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Single-threaded solver, evaluating circuits with SequentialEvaluator: every node stops
+ * evaluating its arguments as soon as its value is decided, and deep circuits do not overflow
+ * the call stack.
+ *
+ * Without an executor, solve() computes the value before it returns. With one, solve()
+ * returns at once and the circuit is evaluated by the executor; stop() then interrupts the
+ * circuits still being evaluated.
+ */
 public class SequentialSolver implements CircuitSolver {
-    private Boolean acceptComputations = true;
+    private static final CircuitValue TRUE = new ImmediateCircuitValue(true);
+    private static final CircuitValue FALSE = new ImmediateCircuitValue(false);
+
+    private final Executor executor;
+    private final Set<DeferredValue> pending;
+    private volatile boolean acceptComputations = true;
+
+    public SequentialSolver() {
+        this(null);
+    }
+
+    /** Creates a solver evaluating every circuit as a single task of the given executor. */
+    public SequentialSolver(Executor executor) {
+        this.executor = executor;
+        this.pending = ConcurrentHashMap.newKeySet();
+    }
 
     @Override
     public CircuitValue solve(Circuit c) {
-        boolean ret;
-
         if (!acceptComputations)
                 return new BrokenCircuitValue();
 
+        if (executor == null) {
+            try {
+                return SequentialEvaluator.evaluate(c.getRoot()) ? TRUE : FALSE;
+            } catch (InterruptedException e) {
+                return new BrokenCircuitValue();
+            }
+        }
+
+        DeferredValue value = new DeferredValue(c.getRoot());
+        pending.add(value);
+        // A concurrent stop() might have missed the value, so check again after registering it
+        if (!acceptComputations) {
+            value.cancel(true);
+            return new BrokenCircuitValue();
+        }
         try {
-            ret = recursiveSolve(c.getRoot());
-        } catch (InterruptedException e) {
+            executor.execute(value);
+        } catch (RejectedExecutionException e) {
+            value.cancel(true);
             return new BrokenCircuitValue();
         }
-        return new ImmediateCircuitValue(ret);
+        return value;
     }
 
     @Override
     public void stop() {
         acceptComputations = false;
-    }
-
-    private boolean recursiveSolve(CircuitNode n) throws InterruptedException {
-        if (n.getType() == NodeType.LEAF)
-            return ((LeafNode) n).getValue();
-
-        CircuitNode[] args = n.getArgs();
-
-        return switch (n.getType()) {
-            case IF -> solveIF(args);
-            case AND -> solveAND(args);
-            case OR -> solveOR(args);
-            case GT -> solveGT(args, ((ThresholdNode) n).getThreshold());
-            case LT -> solveLT(args, ((ThresholdNode) n).getThreshold());
-            case NOT -> solveNOT(args);
-            default -> throw new RuntimeException("Illegal type " + n.getType());
-        };
-    }
-
-    private boolean solveNOT(CircuitNode[] args) throws InterruptedException {
-        return !recursiveSolve(args[0]);
-    }
-
-    private boolean solveLT(CircuitNode[] args, int threshold) throws InterruptedException {
-        int gotTrue = 0;
-        for (CircuitNode arg : args) {
-            if (recursiveSolve(arg))
-                gotTrue++;
+        for (DeferredValue v : pending) {
+            v.cancel(true);
         }
-        return gotTrue < threshold;
     }
 
-    private boolean solveGT(CircuitNode[] args, int threshold) throws InterruptedException {
-        int gotTrue = 0;
-        for (CircuitNode arg : args) {
-            if (recursiveSolve(arg))
-                gotTrue++;
+    // Circuit waiting for the executor, or being evaluated by it
+    private class DeferredValue extends FutureTask<Boolean> implements CircuitValue {
+        private DeferredValue(CircuitNode root) {
+            super(() -> SequentialEvaluator.evaluate(root));
         }
-        return gotTrue > threshold;
-    }
 
-    private boolean solveOR(CircuitNode[] args) throws InterruptedException {
-        for (CircuitNode c : args) {
-            if (recursiveSolve(c))
-                return true;
+        @Override
+        public boolean getValue() throws InterruptedException {
+            try {
+                return get();
+            } catch (ExecutionException | CancellationException e) {
+                throw new InterruptedException();
+            }
         }
-        return false;
-    }
 
-    private boolean solveAND(CircuitNode[] args) throws InterruptedException {
-        for (CircuitNode c : args) {
-            if (!recursiveSolve(c))
-                return false;
+        @Override
+        protected void done() {
+            pending.remove(this);
         }
-        return true;
-    }
-
-    private boolean solveIF(CircuitNode[] args) throws InterruptedException {
-        boolean b = recursiveSolve(args[0]);
-        return b ? recursiveSolve(args[1]) : recursiveSolve(args[2]);
     }
 }
@@ -0,0 +1,165 @@
+package cp2024.solution;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Evaluations of the arguments of a single gate. Each of them is offered to an idle subtree
+// thread; one that no thread was free for is left to the gate's own thread. While waiting for
+// results, the gate offers such arguments to the pool again, as threads may have become free,
+// and if none of its arguments is left in the pool, evaluates the first of them itself, as
+// fork/join does. The gate looks at the results in between, so once they decide its value the
+// arguments nobody has started are never evaluated.
+//
+// Independently of the gate's thread, every value is counted as soon as its evaluation ends, and
+// once the values in decide the gate by its rule, the owner of the gate is told right away. The
+// owner is the task evaluating the gate, so the decision climbs to the root through the counters
+// of the gates above without waiting for any of their threads.
+class ArgsEvaluation {
+    private final Executor executor;
+    private final Decision owner;
+    private final Rule rule;
+    private final List<Subtask> tasks;
+    // Finished evaluations, in the order they finished
+    private final LinkedBlockingQueue<Subtask> finished;
+    // Tasks no thread was free for, in argument order
+    private final ArrayDeque<Subtask> unstarted;
+    // Tasks handed to pool threads whose results have not been taken yet
+    private int inPool;
+    // Values in so far by argument and their counts, guarded by this
+    private final Boolean[] values;
+    private int trues;
+    private int falses;
+    private boolean decided;
+
+    // Receiver of the value of a gate, told as soon as it is decided
+    interface Decision {
+        void decide(boolean value);
+    }
+
+    // Value of the gate given the values of its arguments in so far, null while it is open
+    interface Rule {
+        Boolean decide(int trues, int falses, Boolean[] values);
+    }
+
+    ArgsEvaluation(Executor executor, int arity, Decision owner, Rule rule) {
+        this.executor = executor;
+        this.owner = owner;
+        this.rule = rule;
+        this.tasks = new ArrayList<>();
+        this.finished = new LinkedBlockingQueue<>();
+        this.unstarted = new ArrayDeque<>();
+        this.inPool = 0;
+        this.values = new Boolean[arity];
+        this.trues = 0;
+        this.falses = 0;
+        this.decided = false;
+    }
+
+    // Function to start evaluating the next argument, in a pool thread if one is free
+    Future<Boolean> fork(ObservableTask.Body evaluation) {
+        Subtask task = new Subtask(tasks.size(), evaluation);
+        tasks.add(task);
+        if (offer(task)) inPool++;
+        else unstarted.add(task);
+        return task;
+    }
+
+    // Function to hand the task to a pool thread, returns false if none was free
+    private boolean offer(Subtask task) {
+        task.rejected = false;
+        // A saturated executor marks the task and drops it, see SolverRuntime.saturated
+        executor.execute(task);
+        return !task.rejected;
+    }
+
+    // Function to get an evaluation that has already finished, or null if none has
+    Future<Boolean> poll() {
+        return taken(finished.poll());
+    }
+
+    // Function to wait for the next evaluation to finish, evaluating arguments no thread took in the meantime
+    Future<Boolean> take() throws InterruptedException {
+        Subtask task = finished.poll();
+        while (task == null && !unstarted.isEmpty()) {
+            while (!unstarted.isEmpty() && offer(unstarted.peek())) {
+                unstarted.poll();
+                inPool++;
+            }
+            // A result from the pool may decide the gate, evaluating an argument here would delay it
+            if (inPool > 0) break;
+            unstarted.poll().run();
+            task = finished.poll();
+        }
+        return taken(task != null ? task : finished.take());
+    }
+
+    // Function to wait for the value of the given evaluation, evaluating it here if no thread took it
+    boolean join(Future<Boolean> task) throws InterruptedException, ExecutionException {
+        if (unstarted.remove(task)) ((Subtask) task).run();
+        return task.get();
+    }
+
+    private Subtask taken(Subtask task) {
+        // The last offer of a task evaluated here was turned down
+        if (task != null && !task.rejected) inPool--;
+        return task;
+    }
+
+    // Function to stop the evaluations still running and drop those not started
+    void cancel() {
+        for (Subtask task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    // Function to count the value of an argument, in the thread that found it, and to tell the
+    // owner once the values decide the gate
+    private void record(int index, boolean value) {
+        Boolean decision;
+        synchronized (this) {
+            if (decided) return;
+            values[index] = value;
+            if (value) trues++;
+            else falses++;
+            decision = rule.decide(trues, falses, values);
+            decided = decision != null;
+        }
+        // Outside the lock, as telling the owner records its value in the gate above
+        if (decision != null) owner.decide(decision);
+    }
+
+    // Evaluation of an argument, recognized by the executor's rejection policy
+    final class Subtask extends ObservableTask {
+        private final int index;
+        // Set by the rejection policy, which runs in the thread offering the task
+        private boolean rejected;
+
+        private Subtask(int index, Body evaluation) {
+            super(evaluation);
+            this.index = index;
+            this.rejected = false;
+        }
+
+        void reject() {
+            rejected = true;
+        }
+
+        @Override
+        protected void done() {
+            if (!isCancelled()) {
+                try {
+                    record(index, get());
+                } catch (ExecutionException | InterruptedException e) {
+                    // A failed evaluation decides nothing, the gate's thread fails on it
+                }
+            }
+            finished.add(this);
+            super.done();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cp2024.solution;
+
+import cp2024.circuit.CircuitNode;
+import cp2024.circuit.NodeType;
+import cp2024.circuit.ThresholdNode;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// Asynchronous getArgs() of an inner circuit node, started as soon as the node is discovered.
+// When the arguments arrive, the expansions of the inner arguments are started right away,
+// so the expansion of the circuit runs ahead of its evaluation instead of each level waiting
+// for the evaluation of its parent to be scheduled.
+class ArgsExpansion {
+    private final CircuitNode node;
+    private final SolverRuntime.Tenant tenant;
+    private final Prefetch args;
+    // Expansions of the arguments (null for arguments that need none), set before args completes
+    private volatile ArgsExpansion[] children;
+    private volatile boolean cancelled;
+
+    private ArgsExpansion(CircuitNode node, SolverRuntime.Tenant tenant) {
+        this.node = node;
+        this.tenant = tenant;
+        this.args = new Prefetch(this);
+        this.cancelled = false;
+    }
+
+    // Function to start the expansion of a node, returns null if its value does not depend on its arguments
+    static ArgsExpansion start(CircuitNode n, SolverRuntime.Tenant tenant) {
+        if (n.getType() == NodeType.LEAF) return null;
+        if (n.getType() == NodeType.LT && ((ThresholdNode) n).getThreshold() <= 0) return null;
+
+        ArgsExpansion expansion = new ArgsExpansion(n, tenant);
+        tenant.runtime().executor().execute(expansion.args);
+        return expansion;
+    }
+
+    // Function to wait for the arguments of the node
+    CircuitNode[] getArgs() throws InterruptedException {
+        // Expand the node in this thread if the executor has not started the prefetch yet
+        args.run();
+        try {
+            return args.get();
+        } catch (ExecutionException | CancellationException e) {
+            throw new InterruptedException();
+        }
+    }
+
+    // Expansion of the i-th argument, valid after getArgs() returned
+    ArgsExpansion child(int i) {
+        return children[i];
+    }
+
+    // Function to stop the expansion of the node and of everything below it
+    void cancel() {
+        if (cancelled) return;
+        cancelled = true;
+        args.cancel(true);
+        cancelAll(children);
+    }
+
+    private CircuitNode[] expand() throws InterruptedException {
+        SolverRuntime runtime = tenant.runtime();
+        CircuitNode[] a;
+        tenant.enter();
+        long token = runtime.startBlocking();
+        try {
+            a = node.getArgs();
+        } finally {
+            runtime.endBlocking(token);
+            tenant.exit();
+        }
+
+        ArgsExpansion[] c = new ArgsExpansion[a.length];
+        try {
+            for (int i = 0; i < a.length; i++) {
+                c[i] = start(a[i], tenant);
+            }
+        } catch (RuntimeException e) {
+            // The executor does not accept new tasks
+            cancelAll(c);
+            throw e;
+        }
+
+        // Publish the children before checking the flag, so that a concurrent cancel() sees one or the other
+        children = c;
+        if (cancelled) cancelAll(c);
+        return a;
+    }
+
+    // Task of the expansion, recognized by the executor's rejection policy
+    static final class Prefetch extends FutureTask<CircuitNode[]> {
+        private Prefetch(ArgsExpansion expansion) {
+            super(expansion::expand);
+        }
+    }
+
+    private static void cancelAll(ArgsExpansion[] expansions) {
+        if (expansions == null) return;
+        for (ArgsExpansion e : expansions) {
+            if (e != null) e.cancel();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package cp2024.solution;
+
+import cp2024.circuit.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Solver answering repeated circuits from a persistent ResultStore and passing the rest to
+ * another solver. The store survives restarts, so known circuits are answered without
+ * calling a single leaf.
+ *
+ * Finding the fingerprint expands the whole circuit before anything is evaluated, calling
+ * getArgs() of all nodes whose parents are known at once, so a miss waits for about the depth
+ * of the circuit rather than every call. The delegate then solves the expanded copy. Leaves are
+ * identified only if they are DeclaredLeafNodes, as the public API of other leaves tells nothing
+ * but their value, after their delay. At the first leaf that cannot be identified the expansion
+ * stops and the circuit goes to the delegate uncached, with the nodes expanded so far. Either
+ * way no getArgs() call is repeated.
+ */
+public class CachingCircuitSolver implements CircuitSolver {
+    private final CircuitSolver delegate;
+    private final ResultStore store;
+    private final ExecutorService executorService;
+    private final AtomicBoolean acceptComputations;
+
+    public CachingCircuitSolver(CircuitSolver delegate, ResultStore store) {
+        this.delegate = delegate;
+        this.store = store;
+        this.executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                SolverRuntime.KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>());
+        this.acceptComputations = new AtomicBoolean(true);
+    }
+
+    @Override
+    public CircuitValue solve(Circuit c) {
+        if (!acceptComputations.get())
+            return new ParallelCircuitValue(true);
+
+        // Fingerprinting calls getArgs(), which may be slow, so it does not run in the caller
+        try {
+            return new DeferredCircuitValue(executorService.submit(() -> lookup(c)));
+        } catch (RejectedExecutionException e) {
+            return new ParallelCircuitValue(true);
+        }
+    }
+
+    @Override
+    public void stop() {
+        acceptComputations.set(false);
+        executorService.shutdownNow();
+        delegate.stop();
+    }
+
+    // Function to answer the circuit from the store, or to hand it over to the delegate
+    private CircuitValue lookup(Circuit c) throws InterruptedException {
+        CircuitExpansion expansion = CircuitExpansion.expand(c, executorService,
+                (n, argsNanos) -> n.getType() != NodeType.LEAF || n instanceof DeclaredLeafNode);
+        CircuitFingerprint fingerprint = expansion.isComplete() ? CircuitFingerprint.of(expansion) : null;
+        if (fingerprint == null) return delegate.solve(expansion.circuit());
+
+        Boolean known = store.get(fingerprint);
+        if (known != null) return new SolvedCircuitValue(known);
+
+        return new RecordingCircuitValue(delegate.solve(expansion.circuit()), fingerprint);
+    }
+
+    // Value computed by the delegate, stored once it is known
+    private class RecordingCircuitValue implements CircuitValue {
+        private final CircuitValue value;
+        private final CircuitFingerprint fingerprint;
+
+        private RecordingCircuitValue(CircuitValue value, CircuitFingerprint fingerprint) {
+            this.value = value;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean getValue() throws InterruptedException {
+            boolean result = value.getValue();
+            store.put(fingerprint, result);
+            return result;
+        }
+    }
+}
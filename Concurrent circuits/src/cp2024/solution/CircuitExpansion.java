@@ -0,0 +1,222 @@
+package cp2024.solution;
+
+import cp2024.circuit.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Expansion of a whole circuit ahead of its evaluation. getArgs() of a node is called in a task
+// of the executor as soon as the arguments of its parent are known, so expanding the circuit
+// takes about its depth times the getArgs() delay instead of the sum of all the delays. A budget
+// may stop the expansion early: no more calls are started, the ones in progress are waited for,
+// and circuit() hands on all nodes expanded, so that no getArgs() call is repeated.
+class CircuitExpansion {
+    private final Executor executor;
+    private final Budget budget;
+    private final Node root;
+    // Nodes whose getArgs() has not returned yet, and the tasks calling it; once cancelled, the
+    // count no longer matters, as nobody waits for it
+    private final AtomicInteger pending;
+    private final Set<FutureTask<Void>> running;
+    private final CountDownLatch finished;
+    private volatile boolean stopped;
+
+    /** Decides, for every node found, whether the expansion goes on. */
+    interface Budget {
+        // argsNanos is the time getArgs() of the node took, 0 for leaves; called concurrently
+        boolean admit(CircuitNode n, long argsNanos);
+    }
+
+    /** A node of the circuit and, once getArgs() has returned, its arguments. */
+    static final class Node {
+        private final CircuitNode node;
+        private volatile Node[] args;
+
+        private Node(CircuitNode node) {
+            this.node = node;
+            this.args = null;
+        }
+
+        CircuitNode node() {
+            return node;
+        }
+
+        // Arguments of an expanded inner node, null for leaves and nodes not expanded
+        Node[] args() {
+            return args;
+        }
+    }
+
+    private CircuitExpansion(Circuit c, Executor executor, Budget budget) {
+        this.executor = executor;
+        this.budget = budget;
+        this.root = new Node(c.getRoot());
+        // The root counts as pending until it has been discovered
+        this.pending = new AtomicInteger(1);
+        this.running = ConcurrentHashMap.newKeySet();
+        this.finished = new CountDownLatch(1);
+        this.stopped = false;
+    }
+
+    // Function to expand the circuit as far as the budget admits, returns once it is done or stopped
+    static CircuitExpansion expand(Circuit c, Executor executor, Budget budget) throws InterruptedException {
+        CircuitExpansion expansion = new CircuitExpansion(c, executor, budget);
+        expansion.discover(expansion.root);
+        expansion.release();
+        try {
+            expansion.finished.await();
+        } catch (InterruptedException e) {
+            expansion.cancel();
+            throw e;
+        }
+        return expansion;
+    }
+
+    // Whether every node of the circuit has been expanded
+    boolean isComplete() {
+        return !stopped;
+    }
+
+    Node root() {
+        return root;
+    }
+
+    // Copy of the circuit in which the expanded nodes no longer call getArgs(); leaves and nodes
+    // not expanded are the original ones
+    Circuit circuit() {
+        // Post-order walk with an explicit stack; copies of finished arguments wait on a value stack
+        ArrayDeque<Frame> frames = new ArrayDeque<>();
+        CircuitNode[] copies = new CircuitNode[64];
+        int top = 0;
+
+        Node n = root;
+        while (true) {
+            if (n != null) {
+                Node[] args = n.args;
+                if (args != null) {
+                    frames.push(new Frame(n, args, top));
+                } else {
+                    if (top == copies.length) copies = Arrays.copyOf(copies, top * 2);
+                    copies[top++] = n.node;
+                }
+                n = null;
+            }
+
+            Frame f = frames.peek();
+            if (f == null) return new Circuit(copies[0]);
+
+            if (f.next < f.args.length) {
+                n = f.args[f.next++];
+                continue;
+            }
+
+            frames.pop();
+            CircuitNode[] args = Arrays.copyOfRange(copies, f.base, top);
+            Arrays.fill(copies, f.base, top, null);
+            top = f.base;
+            NodeType type = f.node.node.getType();
+            copies[top++] = f.node.node instanceof ThresholdNode t
+                    ? CircuitNode.mk(type, t.getThreshold(), args)
+                    : CircuitNode.mk(type, args);
+        }
+    }
+
+    // Function to stop starting getArgs() calls, the ones in progress are still waited for
+    private void stop() {
+        stopped = true;
+    }
+
+    // Function to give up on the expansion and interrupt the getArgs() calls in progress
+    private void cancel() {
+        stopped = true;
+        finished.countDown();
+        for (FutureTask<Void> task : running) {
+            task.cancel(true);
+        }
+    }
+
+    // Function to account a leaf, or to start expanding an inner node
+    private void discover(Node n) {
+        if (stopped) return;
+        if (n.node.getType() == NodeType.LEAF) {
+            if (!budget.admit(n.node, 0)) stop();
+            return;
+        }
+
+        pending.incrementAndGet();
+        FutureTask<Void> task = new FutureTask<>(() -> expandNode(n), null) {
+            @Override
+            protected void done() {
+                running.remove(this);
+            }
+        };
+        running.add(task);
+        try {
+            // Registered before the check, so that a concurrent cancel() interrupts it or it sees the flag
+            if (stopped) {
+                task.cancel(true);
+                release();
+            } else {
+                executor.execute(task);
+            }
+        } catch (RejectedExecutionException e) {
+            task.cancel(true);
+            stop();
+            release();
+        }
+    }
+
+    private void expandNode(Node n) {
+        try {
+            long start = System.nanoTime();
+            CircuitNode[] a = n.node.getArgs();
+            long argsNanos = System.nanoTime() - start;
+
+            Node[] args = new Node[a.length];
+            for (int i = 0; i < a.length; i++) {
+                args[i] = new Node(a[i]);
+            }
+            // Kept even if the expansion ends here, the call has been paid for
+            n.args = args;
+            if (stopped) return;
+            if (!budget.admit(n.node, argsNanos)) {
+                stop();
+                return;
+            }
+            for (Node arg : args) {
+                discover(arg);
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            // The node stays unexpanded; a failing getArgs() fails again for whoever evaluates it,
+            // an interrupted one means the expansion has been cancelled
+            stop();
+        } finally {
+            release();
+        }
+    }
+
+    // Function to account a node whose expansion has ended, the last one finishes the whole
+    private void release() {
+        if (pending.decrementAndGet() == 0) finished.countDown();
+    }
+
+    private static final class Frame {
+        private final Node node;
+        private final Node[] args;
+        private final int base;
+        private int next = 0;
+
+        private Frame(Node node, Node[] args, int base) {
+            this.node = node;
+            this.args = args;
+            this.base = base;
+        }
+    }
+}
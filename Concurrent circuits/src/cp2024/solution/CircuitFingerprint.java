@@ -0,0 +1,102 @@
+package cp2024.solution;
+
+import cp2024.circuit.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * 128-bit structural fingerprint of a circuit: node types, thresholds, argument order and the
+ * identity of every leaf. Only DeclaredLeafNode leaves have a known identity (their value and
+ * delay), circuits with other leaves have no fingerprint.
+ */
+public record CircuitFingerprint(long high, long low) {
+    private static final long HIGH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long LOW_SEED = 0xC2B2AE3D27D4EB4FL;
+    private static final int INITIAL_DEPTH = 64;
+
+    /**
+     * Fingerprint of a completely expanded circuit, computed from the arguments already fetched,
+     * without calling getArgs(). Returns null if the circuit contains leaves without a known
+     * identity.
+     */
+    static CircuitFingerprint of(CircuitExpansion expansion) {
+        // Post-order walk with an explicit stack; hashes of finished arguments wait on value stacks
+        ArrayDeque<Frame> frames = new ArrayDeque<>();
+        long[] highs = new long[INITIAL_DEPTH];
+        long[] lows = new long[INITIAL_DEPTH];
+        int top = 0;
+
+        CircuitExpansion.Node n = expansion.root();
+        while (true) {
+            if (n != null) {
+                if (n.node().getType() == NodeType.LEAF) {
+                    if (!(n.node() instanceof DeclaredLeafNode leaf)) return null;
+
+                    if (top == highs.length) {
+                        highs = Arrays.copyOf(highs, top * 2);
+                        lows = Arrays.copyOf(lows, top * 2);
+                    }
+                    long value = leaf.getDeclaredValue() ? 1 : 0;
+                    long delay = leaf.getDelay().toNanos();
+                    highs[top] = mix(mix(HIGH_SEED, value), delay);
+                    lows[top] = mix(mix(LOW_SEED, value), delay);
+                    top++;
+                } else {
+                    frames.push(new Frame(n.node(), n.args(), top));
+                }
+                n = null;
+            }
+
+            Frame f = frames.peek();
+            if (f == null) {
+                return new CircuitFingerprint(highs[0], lows[0]);
+            }
+
+            if (f.next < f.args.length) {
+                n = f.args[f.next++];
+                continue;
+            }
+
+            frames.pop();
+            NodeType type = f.node.getType();
+            int threshold = f.node instanceof ThresholdNode t ? t.getThreshold() : 0;
+            long header = ((long) type.ordinal() << 32 | threshold) * 31 + f.args.length;
+            long high = mix(HIGH_SEED, header);
+            long low = mix(LOW_SEED, header);
+            for (int i = f.base; i < top; i++) {
+                high = mix(high, highs[i]);
+                low = mix(low, lows[i]);
+            }
+
+            top = f.base;
+            highs[top] = high;
+            lows[top] = low;
+            top++;
+        }
+    }
+
+    // Order-dependent combination of a running hash with the next value (murmur3 finalizer)
+    private static long mix(long h, long v) {
+        h ^= v + 0x9E3779B97F4A7C15L + (h << 6) + (h >>> 2);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Frame {
+        private final CircuitNode node;
+        private final CircuitExpansion.Node[] args;
+        private final int base;
+        private int next = 0;
+
+        private Frame(CircuitNode node, CircuitExpansion.Node[] args, int base) {
+            this.node = node;
+            this.args = args;
+            this.base = base;
+        }
+    }
+}
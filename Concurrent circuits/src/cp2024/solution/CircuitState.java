@@ -0,0 +1,9 @@
+package cp2024.solution;
+
+/** Current knowledge about the value of a circuit. */
+public enum CircuitState {
+    TRUE,
+    FALSE,
+    // Not computed yet, or never going to be (the computation was interrupted)
+    UNKNOWN
+}
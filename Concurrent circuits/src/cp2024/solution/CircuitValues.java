@@ -0,0 +1,129 @@
+package cp2024.solution;
+
+import cp2024.circuit.CircuitValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Operations on many circuit values at once, for callers that need to know whether enough of
+ * them came out a particular way rather than every single value.
+ *
+ * Values of ParallelCircuitSolver are observed without blocking any thread, and are known as
+ * soon as the values counted by the gates decide the root, even while other parts of the circuit
+ * are still being evaluated; any other value is waited for by a helper thread calling getValue().
+ */
+public final class CircuitValues {
+    private static final ExecutorService WAITERS = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            SolverRuntime.KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(), r -> {
+                Thread t = new Thread(r, "circuit-values-waiter");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private CircuitValues() {
+    }
+
+    /** Current state of every value, without waiting for any of them. */
+    public static List<CircuitState> snapshot(List<? extends CircuitValue> values) {
+        List<CircuitState> states = new ArrayList<>(values.size());
+        for (CircuitValue v : values) {
+            states.add(stateOf(v));
+        }
+        return states;
+    }
+
+    /**
+     * Waits until any of the values turns out to be {@code wanted} and returns its index, or
+     * returns -1 once none of them can (all are known otherwise, or were interrupted).
+     * With {@code cancelRest}, the computations of the values not known yet are stopped.
+     */
+    public static int awaitAny(List<? extends CircuitValue> values, boolean wanted, boolean cancelRest)
+            throws InterruptedException {
+        List<Integer> matched = await(values, 1, wanted, cancelRest);
+        return matched.isEmpty() ? -1 : matched.get(0);
+    }
+
+    /**
+     * Waits until k of the values turn out to be {@code wanted}, returning true, or until so
+     * many are known otherwise that it can no longer happen, returning false.
+     * With {@code cancelRest}, the computations of the values not known yet are stopped.
+     */
+    public static boolean awaitCount(List<? extends CircuitValue> values, int k, boolean wanted, boolean cancelRest)
+            throws InterruptedException {
+        return await(values, k, wanted, cancelRest).size() >= k;
+    }
+
+    // Function to collect indices of values equal to wanted, until there are k of them or there cannot be
+    private static List<Integer> await(List<? extends CircuitValue> values, int k, boolean wanted, boolean cancelRest)
+            throws InterruptedException {
+        int n = values.size();
+        CircuitState expected = wanted ? CircuitState.TRUE : CircuitState.FALSE;
+        List<Integer> matched = new ArrayList<>();
+        if (k <= 0 || k > n) return matched;
+
+        LinkedBlockingQueue<Resolution> resolved = new LinkedBlockingQueue<>();
+        List<Future<?>> waiting = new ArrayList<>();
+        boolean[] known = new boolean[n];
+        try {
+            for (int i = 0; i < n; i++) {
+                observe(values.get(i), i, resolved, waiting);
+            }
+
+            int others = 0;
+            while (matched.size() < k && n - others >= k) {
+                Resolution r = resolved.take();
+                known[r.index] = true;
+                if (r.state == expected) matched.add(r.index);
+                else others++;
+            }
+            return matched;
+        } finally {
+            for (Future<?> f : waiting) {
+                f.cancel(true);
+            }
+            if (cancelRest) {
+                for (int i = 0; i < n; i++) {
+                    if (!known[i]) cancel(values.get(i));
+                }
+            }
+        }
+    }
+
+    // Function to report the value to the queue as soon as it is known or lost
+    private static void observe(CircuitValue v, int index, LinkedBlockingQueue<Resolution> resolved,
+                                List<Future<?>> waiting) {
+        if (v instanceof ParallelCircuitValue p && p.whenResolved(() -> resolved.add(new Resolution(index, p.getState())))) {
+            return;
+        }
+
+        waiting.add(WAITERS.submit(() -> {
+            CircuitState state;
+            try {
+                state = v.getValue() ? CircuitState.TRUE : CircuitState.FALSE;
+            } catch (InterruptedException | RuntimeException e) {
+                state = CircuitState.UNKNOWN;
+            }
+            resolved.add(new Resolution(index, state));
+        }));
+    }
+
+    // Function to find out what is known about a value without waiting, only solvers of this package tell
+    static CircuitState stateOf(CircuitValue v) {
+        if (v instanceof ParallelCircuitValue p) return p.getState();
+        if (v instanceof DeferredCircuitValue d) return d.getState();
+        if (v instanceof SolvedCircuitValue s) return s.getValue() ? CircuitState.TRUE : CircuitState.FALSE;
+        return CircuitState.UNKNOWN;
+    }
+
+    // Function to stop the computation of a value, if the solver that produced it allows that
+    private static void cancel(CircuitValue v) {
+        if (v instanceof ParallelCircuitValue p) p.cancel();
+        else if (v instanceof DeferredCircuitValue d) d.cancel();
+    }
+
+    private record Resolution(int index, CircuitState state) {
+    }
+}
@@ -0,0 +1,140 @@
+package cp2024.solution;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Worker process of a DistributedCircuitSolver: accepts coordinator connections and solves the
+ * subtrees they send with a local ParallelCircuitSolver, until the coordinator cancels them.
+ *
+ * Run as {@code java cp2024.solution.CircuitWorker tcp:host:port} or {@code unix:path}.
+ */
+public class CircuitWorker implements AutoCloseable {
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final ParallelCircuitSolver solver;
+    // Threads waiting for the values of subtrees to send them back
+    private final ExecutorService waiters;
+    private final Thread acceptor;
+
+    public CircuitWorker(SocketAddress address) throws IOException {
+        this.server = WireChannel.listen(address);
+        this.address = server.getLocalAddress();
+        this.solver = new ParallelCircuitSolver();
+        this.waiters = Executors.newCachedThreadPool();
+        this.acceptor = new Thread(this::acceptLoop, "circuit-worker-acceptor");
+        acceptor.start();
+    }
+
+    /** The address the worker listens on, with the actual port if port 0 was requested. */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        solver.stop();
+        waiters.shutdownNow();
+        if (address instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+        }
+    }
+
+    private void acceptLoop() {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                WireChannel.noDelay(channel);
+                new Connection(channel);
+            }
+        } catch (IOException e) {
+            // The server socket was closed
+        }
+    }
+
+    // Subtrees requested over a single coordinator connection
+    private class Connection implements WireChannel.Handler {
+        private final ConcurrentHashMap<Long, ParallelCircuitValue> running;
+        private final WireChannel wire;
+
+        private Connection(SocketChannel channel) {
+            this.running = new ConcurrentHashMap<>();
+            this.wire = new WireChannel(channel, this, "circuit-worker-" + channel.hashCode());
+        }
+
+        @Override
+        public void frame(byte op, long id, ByteBuffer payload) {
+            switch (op) {
+                case WireChannel.SOLVE -> solve(id, payload);
+                case WireChannel.CANCEL -> {
+                    ParallelCircuitValue value = running.remove(id);
+                    if (value != null) value.cancel();
+                }
+                default -> wire.close();
+            }
+        }
+
+        @Override
+        public void closed() {
+            // Nobody is waiting for the results anymore
+            for (ParallelCircuitValue value : running.values()) {
+                value.cancel();
+            }
+            running.clear();
+        }
+
+        private void solve(long id, ByteBuffer image) {
+            ParallelCircuitValue value;
+            try {
+                value = solver.solve(CompactCircuit.wrap(image));
+            } catch (IOException | RuntimeException e) {
+                reply(id, WireChannel.FAILED);
+                return;
+            }
+
+            running.put(id, value);
+            try {
+                waiters.execute(() -> {
+                    byte result;
+                    try {
+                        result = value.getValue() ? WireChannel.TRUE : WireChannel.FALSE;
+                    } catch (InterruptedException | RuntimeException e) {
+                        result = WireChannel.FAILED;
+                    }
+                    // A cancelled subtree is no longer awaited, so its result is not sent
+                    if (running.remove(id) != null) reply(id, result);
+                });
+            } catch (RejectedExecutionException e) {
+                running.remove(id);
+                value.cancel();
+                reply(id, WireChannel.FAILED);
+            }
+        }
+
+        private void reply(long id, byte result) {
+            try {
+                wire.send(WireChannel.RESULT, id, ByteBuffer.wrap(new byte[] {result}));
+            } catch (IOException e) {
+                // The coordinator is gone
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: CircuitWorker tcp:host:port | unix:path");
+        }
+        new CircuitWorker(WireChannel.parseAddress(args[0]));
+        // The acceptor thread keeps the worker alive until the process is killed
+    }
+}
@@ -0,0 +1,179 @@
+package cp2024.solution;
+
+import cp2024.circuit.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * A circuit read from the compact binary image produced by {@link CompactCircuitWriter}.
+ *
+ * The nodes reachable from the root are decoded from the (usually memory-mapped) buffer when
+ * the circuit is wrapped, into plain SimpleNode and ThresholdNode objects and DeclaredLeafNode
+ * leaves; a node shared by several parents is decoded once. Only these nodes are created, so one
+ * image can hold many circuits that are wrapped one by one.
+ *
+ * Image layout, version 1 (big-endian):
+ * <pre>
+ * header:   int magic, int version, int nodeCount, int root, int childCount, int reserved
+ * nodes:    nodeCount records of int type, int threshold, int firstChild, int argCount,
+ *           long leaf (delay in milliseconds shifted left by one, or-ed with the value)
+ * children: childCount ints, the argument ids of every node stored contiguously
+ * </pre>
+ */
+public final class CompactCircuit extends Circuit {
+    static final int MAGIC = 0x43504331; // "CPC1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int NODE_BYTES = 24;
+    static final int LEAF_CODE = 0;
+
+    // Type codes are part of the format, so they do not depend on the order of NodeType constants
+    private static final NodeType[] TYPES = {
+            NodeType.LEAF, NodeType.GT, NodeType.LT, NodeType.AND, NodeType.OR, NodeType.NOT, NodeType.IF
+    };
+
+    // Nodes in the whole image, not only those reachable from the root
+    private final int nodeCount;
+
+    private CompactCircuit(int nodeCount, CircuitNode root) {
+        super(root);
+        this.nodeCount = nodeCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /** Maps the file read-only; the mapping stays valid after the channel is closed. */
+    public static CompactCircuit map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Circuit image exceeds 2 GiB: " + file);
+            }
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /** Reads the image between the buffer's position and limit without copying it. */
+    public static CompactCircuit wrap(ByteBuffer buffer) throws IOException {
+        return wrap(buffer, -1);
+    }
+
+    /**
+     * Like wrap(buffer), but the circuit is rooted at the given node instead of the image's root,
+     * so that one image can hold many disjoint circuits.
+     */
+    public static CompactCircuit wrap(ByteBuffer buffer, int root) throws IOException {
+        ByteBuffer b = buffer.slice();
+        if (b.limit() < HEADER_BYTES || b.getInt(0) != MAGIC) {
+            throw new IOException("Not a compact circuit image.");
+        }
+        if (b.getInt(4) != VERSION) {
+            throw new IOException("Unsupported compact circuit version " + b.getInt(4) + ".");
+        }
+        int nodeCount = b.getInt(8);
+        if (root == -1) root = b.getInt(12);
+        int childCount = b.getInt(16);
+        long size = HEADER_BYTES + (long) nodeCount * NODE_BYTES + (long) childCount * Integer.BYTES;
+        if (nodeCount <= 0 || childCount < 0 || root < 0 || root >= nodeCount || size > b.limit()) {
+            throw new IOException("Corrupt compact circuit header.");
+        }
+
+        Image image = new Image(b, nodeCount, childCount);
+        return new CompactCircuit(nodeCount, image.decode(root));
+    }
+
+    static int typeCode(NodeType type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i] == type) return i;
+        }
+        throw new RuntimeException("Illegal type " + type);
+    }
+
+    private static final class Image {
+        private final ByteBuffer buffer;
+        private final int nodeCount;
+        private final int childCount;
+        private final int childrenOffset;
+
+        private Image(ByteBuffer buffer, int nodeCount, int childCount) {
+            this.buffer = buffer;
+            this.nodeCount = nodeCount;
+            this.childCount = childCount;
+            this.childrenOffset = HEADER_BYTES + nodeCount * NODE_BYTES;
+        }
+
+        // Function to create the nodes reachable from the root, arguments before the nodes using them
+        private CircuitNode decode(int root) {
+            // Post-order walk with an explicit stack; the walk visits a shared node only once
+            HashMap<Integer, CircuitNode> decoded = new HashMap<>();
+            ArrayDeque<Integer> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                int id = pending.peek();
+                if (decoded.containsKey(id)) {
+                    pending.pop();
+                    continue;
+                }
+                int offset = offset(id);
+                NodeType type = type(id, offset);
+                if (type == NodeType.LEAF) {
+                    long leaf = buffer.getLong(offset + 16);
+                    decoded.put(id, new DeclaredLeafNode((leaf & 1) != 0, Duration.ofMillis(leaf >>> 1)));
+                    pending.pop();
+                    continue;
+                }
+
+                int firstChild = buffer.getInt(offset + 8);
+                int argCount = buffer.getInt(offset + 12);
+                if (firstChild < 0 || argCount < 0 || (long) firstChild + argCount > childCount) {
+                    throw new IllegalStateException("Corrupt compact circuit: arguments of node " + id + ".");
+                }
+                CircuitNode[] args = new CircuitNode[argCount];
+                boolean ready = true;
+                for (int i = 0; i < argCount; i++) {
+                    int arg = buffer.getInt(childrenOffset + (firstChild + i) * Integer.BYTES);
+                    // Arguments are written before the nodes using them, which also rules out cycles
+                    if (arg < 0 || arg >= id) {
+                        throw new IllegalStateException("Corrupt compact circuit: argument " + arg + " of node " + id + ".");
+                    }
+                    args[i] = decoded.get(arg);
+                    if (args[i] == null) {
+                        pending.push(arg);
+                        ready = false;
+                    }
+                }
+                if (!ready) continue;
+
+                pending.pop();
+                decoded.put(id, type == NodeType.GT || type == NodeType.LT
+                        ? CircuitNode.mk(type, buffer.getInt(offset + 4), args)
+                        : CircuitNode.mk(type, args));
+            }
+            return decoded.get(root);
+        }
+
+        private int offset(int id) {
+            if (id < 0 || id >= nodeCount) {
+                throw new IllegalStateException("Corrupt compact circuit: node id " + id + ".");
+            }
+            return HEADER_BYTES + id * NODE_BYTES;
+        }
+
+        private NodeType type(int id, int offset) {
+            int code = buffer.getInt(offset);
+            if (code < 0 || code >= TYPES.length) {
+                throw new IllegalStateException("Corrupt compact circuit: type code " + code + " of node " + id + ".");
+            }
+            return TYPES[code];
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package cp2024.solution;
+
+import cp2024.circuit.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Builds the compact binary image of a circuit read by {@link CompactCircuit}.
+ *
+ * Nodes are added bottom-up: every node refers to its arguments by the ids returned
+ * when they were added, so a node can only be added after all of its arguments.
+ * See {@link CompactCircuit} for the layout of the image.
+ */
+public final class CompactCircuitWriter {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Per node: type code, threshold, first child position and argument count
+    private int[] nodes = new int[INITIAL_CAPACITY * 4];
+    // Per node: leaf value and delay in milliseconds (zero for inner nodes)
+    private long[] leaves = new long[INITIAL_CAPACITY];
+    private int[] children = new int[INITIAL_CAPACITY];
+    private int nodeCount = 0;
+    private int childCount = 0;
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int addLeaf(boolean value, Duration delay) {
+        long millis = delay.toMillis();
+        if (millis < 0) {
+            throw new IllegalArgumentException("The delay must be non-negative.");
+        }
+        return addRecord(CompactCircuit.LEAF_CODE, 0, childCount, 0, millis << 1 | (value ? 1 : 0));
+    }
+
+    public int addNode(NodeType type, int... args) {
+        return addNode(type, 0, args, 0, args.length);
+    }
+
+    public int addNode(NodeType type, int threshold, int... args) {
+        return addNode(type, threshold, args, 0, args.length);
+    }
+
+    /** Adds a node whose argument ids are {@code args[from, from + count)}. */
+    public int addNode(NodeType type, int threshold, int[] args, int from, int count) {
+        checkNode(type, threshold, count);
+        if (type != NodeType.GT && type != NodeType.LT) threshold = 0;
+        if (childCount + count > children.length) {
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childCount + count));
+        }
+        for (int i = 0; i < count; i++) {
+            int id = args[from + i];
+            if (id < 0 || id >= nodeCount) {
+                throw new IllegalArgumentException("Unknown argument id " + id);
+            }
+            children[childCount + i] = id;
+        }
+        int id = addRecord(CompactCircuit.typeCode(type), threshold, childCount, count, 0);
+        childCount += count;
+        return id;
+    }
+
+    /** Adds every node of the circuit and returns the id of its root. */
+    public int add(Circuit c) throws InterruptedException {
+        // Post-order walk with an explicit stack, so that deep circuits do not overflow the call stack
+        ArrayDeque<Frame> frames = new ArrayDeque<>();
+        int[] ids = new int[INITIAL_CAPACITY];
+        int top = 0;
+
+        CircuitNode n = c.getRoot();
+        while (true) {
+            if (n != null) {
+                if (n.getType() == NodeType.LEAF) {
+                    if (!(n instanceof DeclaredLeafNode leaf)) {
+                        throw new IllegalArgumentException("Only DeclaredLeafNode leaves can be serialized.");
+                    }
+                    if (top == ids.length) ids = Arrays.copyOf(ids, top * 2);
+                    ids[top++] = addLeaf(leaf.getDeclaredValue(), leaf.getDelay());
+                    n = null;
+                } else {
+                    frames.push(new Frame(n, n.getArgs(), top));
+                    n = null;
+                }
+            }
+
+            Frame f = frames.peek();
+            if (f == null) return ids[0];
+
+            if (f.next < f.args.length) {
+                n = f.args[f.next++];
+            } else {
+                frames.pop();
+                int threshold = f.node instanceof ThresholdNode t ? t.getThreshold() : 0;
+                int id = addNode(f.node.getType(), threshold, ids, f.base, top - f.base);
+                top = f.base;
+                ids[top++] = id;
+            }
+        }
+    }
+
+    /** Returns the image with the given root, ready to be read by {@link CompactCircuit#wrap}. */
+    public ByteBuffer toByteBuffer(int root) {
+        if (root < 0 || root >= nodeCount) {
+            throw new IllegalArgumentException("Unknown root id " + root);
+        }
+        long size = CompactCircuit.HEADER_BYTES
+                + (long) nodeCount * CompactCircuit.NODE_BYTES + (long) childCount * Integer.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Circuit image exceeds 2 GiB.");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(CompactCircuit.MAGIC)
+                .putInt(CompactCircuit.VERSION)
+                .putInt(nodeCount)
+                .putInt(root)
+                .putInt(childCount)
+                .putInt(0);
+        for (int i = 0; i < nodeCount; i++) {
+            out.putInt(nodes[4 * i])
+                    .putInt(nodes[4 * i + 1])
+                    .putInt(nodes[4 * i + 2])
+                    .putInt(nodes[4 * i + 3])
+                    .putLong(leaves[i]);
+        }
+        for (int i = 0; i < childCount; i++) {
+            out.putInt(children[i]);
+        }
+        return out.flip();
+    }
+
+    public void writeTo(Path file, int root) throws IOException {
+        ByteBuffer image = toByteBuffer(root);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (image.hasRemaining()) {
+                channel.write(image);
+            }
+        }
+    }
+
+    /** Convenience function writing a whole circuit to a file. */
+    public static void write(Circuit c, Path file) throws IOException, InterruptedException {
+        CompactCircuitWriter writer = new CompactCircuitWriter();
+        writer.writeTo(file, writer.add(c));
+    }
+
+    // Function to reject the nodes SimpleNode and ThresholdNode would reject, before they are written
+    private static void checkNode(NodeType type, int threshold, int argCount) {
+        switch (type) {
+            case NOT -> {
+                if (argCount != 1) throw new IllegalArgumentException("NOT nodes must have exactly one argument.");
+            }
+            case AND, OR -> {
+                if (argCount < 2) throw new IllegalArgumentException("AND and OR nodes must have at least two arguments.");
+            }
+            case IF -> {
+                if (argCount != 3) throw new IllegalArgumentException("IF nodes must have exactly three arguments.");
+            }
+            case GT, LT -> {
+                if (argCount < 1) throw new IllegalArgumentException("Threshold nodes must have at least one argument.");
+                if (threshold < 0) throw new IllegalArgumentException("The threshold must be non-negative.");
+            }
+            default -> throw new IllegalArgumentException("Illegal type " + type);
+        }
+    }
+
+    private int addRecord(int code, int threshold, int firstChild, int argCount, long leaf) {
+        if (nodeCount == leaves.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+            leaves = Arrays.copyOf(leaves, leaves.length * 2);
+        }
+        nodes[4 * nodeCount] = code;
+        nodes[4 * nodeCount + 1] = threshold;
+        nodes[4 * nodeCount + 2] = firstChild;
+        nodes[4 * nodeCount + 3] = argCount;
+        leaves[nodeCount] = leaf;
+        return nodeCount++;
+    }
+
+    private static final class Frame {
+        private final CircuitNode node;
+        private final CircuitNode[] args;
+        // Position of this node's first argument id on the id stack
+        private final int base;
+        private int next = 0;
+
+        private Frame(CircuitNode node, CircuitNode[] args, int base) {
+            this.node = node;
+            this.args = args;
+            this.base = base;
+        }
+    }
+}
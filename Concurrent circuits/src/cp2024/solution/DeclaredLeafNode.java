@@ -0,0 +1,40 @@
+package cp2024.solution;
+
+import cp2024.circuit.LeafNode;
+
+import java.time.Duration;
+
+/**
+ * Leaf returning a fixed value after a fixed delay, like SleepyLeafNode, but with both readable
+ * without calling getValue(). SleepyLeafNode does not expose them, so leaves of this class are
+ * the only ones this package can identify: circuits decoded from compact images are made of
+ * them, and only circuits made of them can be encoded, fingerprinted or shipped to workers.
+ */
+public final class DeclaredLeafNode extends LeafNode {
+    private final boolean value;
+    private final Duration delay;
+
+    public DeclaredLeafNode(boolean value) {
+        this(value, Duration.ZERO);
+    }
+
+    public DeclaredLeafNode(boolean value, Duration delay) {
+        this.value = value;
+        this.delay = delay;
+    }
+
+    @Override
+    public boolean getValue() throws InterruptedException {
+        Thread.sleep(this.delay.toMillis());
+        return this.value;
+    }
+
+    /** The value getValue() returns, available without waiting for the delay. */
+    public boolean getDeclaredValue() {
+        return this.value;
+    }
+
+    public Duration getDelay() {
+        return this.delay;
+    }
+}
@@ -0,0 +1,45 @@
+package cp2024.solution;
+
+import cp2024.circuit.CircuitValue;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Value of a circuit handed to a solver only once some slow preparation has finished
+class DeferredCircuitValue implements CircuitValue {
+    private final Future<CircuitValue> value;
+
+    DeferredCircuitValue(Future<CircuitValue> value) {
+        this.value = value;
+    }
+
+    @Override
+    public boolean getValue() throws InterruptedException {
+        try {
+            return value.get().getValue();
+        } catch (ExecutionException | CancellationException e) {
+            throw new InterruptedException();
+        }
+    }
+
+    // Function to tell the state of the value handed over, if preparing the circuit has finished
+    CircuitState getState() {
+        if (!value.isDone() || value.isCancelled()) return CircuitState.UNKNOWN;
+        try {
+            return CircuitValues.stateOf(value.get());
+        } catch (ExecutionException | InterruptedException e) {
+            return CircuitState.UNKNOWN;
+        }
+    }
+
+    // Function to stop preparing the circuit, or solving it if it has already been handed over
+    void cancel() {
+        if (value.cancel(true)) return;
+        try {
+            if (value.isDone() && value.get() instanceof ParallelCircuitValue v) v.cancel();
+        } catch (ExecutionException | CancellationException | InterruptedException e) {
+            // Nothing is being computed
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package cp2024.solution;
+
+import cp2024.circuit.*;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solver spreading every circuit over CircuitWorker processes, reached by TCP or Unix domain
+ * sockets.
+ *
+ * The coordinator expands the whole circuit once, with the parallel CircuitExpansion, picks a top
+ * with a few subtrees per worker and evaluates that top itself with a ParallelCircuitSolver, in
+ * which every subtree is replaced by a leaf computed remotely. Each subtree is encoded in the
+ * compact circuit format once, while splitting, and the leaf sends it when it is evaluated; when
+ * the top no longer needs it (short-circuiting, stop()), the worker is told to cancel it.
+ * Subtrees that cannot be encoded (leaves other than DeclaredLeafNode) stay in the top, and those
+ * whose worker failed are computed locally, both from the expanded copy, so no getArgs() call is
+ * repeated.
+ */
+public class DistributedCircuitSolver implements CircuitSolver {
+    // Subtrees the top is split into per worker, so that slow subtrees do not leave workers idle
+    private static final int SUBTREES_PER_WORKER = 4;
+    // Levels of the circuit the coordinator expands at most while looking for subtrees
+    private static final int MAX_SPLIT_DEPTH = 16;
+
+    private final ParallelCircuitSolver local;
+    private final ExecutorService executorService;
+    private final List<WorkerConnection> workers;
+    private final AtomicBoolean acceptComputations;
+    private final AtomicInteger nextWorker;
+
+    /** Connects to all the workers, failing if any of them cannot be reached. */
+    public DistributedCircuitSolver(List<? extends SocketAddress> workers) throws IOException {
+        if (workers.isEmpty()) throw new IllegalArgumentException("No workers given.");
+
+        this.workers = new ArrayList<>();
+        try {
+            for (SocketAddress address : workers) {
+                this.workers.add(new WorkerConnection(address));
+            }
+        } catch (IOException e) {
+            for (WorkerConnection w : this.workers) w.close();
+            throw e;
+        }
+        this.local = new ParallelCircuitSolver();
+        this.executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                SolverRuntime.KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>());
+        this.acceptComputations = new AtomicBoolean(true);
+        this.nextWorker = new AtomicInteger();
+    }
+
+    @Override
+    public CircuitValue solve(Circuit c) {
+        if (!acceptComputations.get())
+            return new ParallelCircuitValue(true);
+
+        // Splitting calls getArgs(), which may be slow, so it does not run in the caller
+        try {
+            return new DeferredCircuitValue(executorService.submit(() -> local.solve(split(c))));
+        } catch (RejectedExecutionException e) {
+            return new ParallelCircuitValue(true);
+        }
+    }
+
+    @Override
+    public void stop() {
+        acceptComputations.set(false);
+        executorService.shutdownNow();
+        local.stop();
+        for (WorkerConnection w : workers) w.close();
+    }
+
+    // Function to replace the subtrees below the top of the circuit with remotely computed leaves
+    private Circuit split(Circuit c) throws InterruptedException {
+        // The nodes of the copy return their arguments without calling the original getArgs()
+        CircuitExpansion expansion = CircuitExpansion.expand(c, executorService, (n, argsNanos) -> true);
+        Circuit copy = expansion.circuit();
+        // Some getArgs() failed, the local solver meets the failure again where it matters
+        if (!expansion.isComplete()) return copy;
+
+        // Take the top level by level, until there are enough subtrees to hand out
+        IdentityHashMap<CircuitNode, CircuitNode[]> top = new IdentityHashMap<>();
+        List<CircuitNode> level = List.of(copy.getRoot());
+        int wanted = workers.size() * SUBTREES_PER_WORKER;
+        for (int depth = 0; depth < MAX_SPLIT_DEPTH; depth++) {
+            int inner = 0;
+            for (CircuitNode n : level) {
+                if (n.getType() != NodeType.LEAF && !top.containsKey(n)) inner++;
+            }
+            if (inner == 0 || inner >= wanted) break;
+
+            List<CircuitNode> next = new ArrayList<>();
+            for (CircuitNode n : level) {
+                if (n.getType() == NodeType.LEAF || top.containsKey(n)) continue;
+                CircuitNode[] args = n.getArgs();
+                top.put(n, args);
+                next.addAll(List.of(args));
+            }
+            level = next;
+        }
+
+        return new Circuit(rebuild(copy.getRoot(), top));
+    }
+
+    // Function to copy the top, the depth of the recursion is bounded by MAX_SPLIT_DEPTH
+    private CircuitNode rebuild(CircuitNode n, IdentityHashMap<CircuitNode, CircuitNode[]> top)
+            throws InterruptedException {
+        if (n.getType() == NodeType.LEAF) return n;
+
+        CircuitNode[] args = top.get(n);
+        if (args == null) {
+            ByteBuffer image = encode(n);
+            return image == null ? n : new RemoteLeafNode(n, nextWorker(), image);
+        }
+
+        CircuitNode[] copies = new CircuitNode[args.length];
+        for (int i = 0; i < args.length; i++) {
+            copies[i] = rebuild(args[i], top);
+        }
+        return switch (n.getType()) {
+            case GT, LT -> CircuitNode.mk(n.getType(), ((ThresholdNode) n).getThreshold(), copies);
+            default -> CircuitNode.mk(n.getType(), copies);
+        };
+    }
+
+    // Function to encode an expanded subtree, returns null if it has leaves that cannot be encoded
+    private static ByteBuffer encode(CircuitNode subtree) throws InterruptedException {
+        try {
+            CompactCircuitWriter writer = new CompactCircuitWriter();
+            return writer.toByteBuffer(writer.add(new Circuit(subtree)));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    // Function to pick the workers in turn, skipping lost connections while there are others
+    private WorkerConnection nextWorker() {
+        for (int i = 0; i < workers.size(); i++) {
+            WorkerConnection w = workers.get(Math.floorMod(nextWorker.getAndIncrement(), workers.size()));
+            if (w.isOpen()) return w;
+        }
+        return workers.get(0);
+    }
+
+    // Function to calculate a subtree on this machine, when no worker can do it
+    private boolean solveLocally(CircuitNode subtree) throws InterruptedException {
+        ParallelCircuitValue value = local.solve(new Circuit(subtree));
+        try {
+            return value.getValue();
+        } catch (InterruptedException e) {
+            value.cancel();
+            throw e;
+        }
+    }
+
+    // Leaf standing for an expanded subtree computed by a worker
+    private class RemoteLeafNode extends LeafNode {
+        private final CircuitNode subtree;
+        private final WorkerConnection worker;
+        // The subtree in the compact format
+        private final ByteBuffer image;
+
+        private RemoteLeafNode(CircuitNode subtree, WorkerConnection worker, ByteBuffer image) {
+            this.subtree = subtree;
+            this.worker = worker;
+            this.image = image;
+        }
+
+        @Override
+        public boolean getValue() throws InterruptedException {
+            Boolean value = worker.solve(image.duplicate());
+            if (value != null) return value;
+            return solveLocally(subtree);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package cp2024.solution;
+
+import cp2024.circuit.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Solver choosing, for every circuit, the cheapest way to evaluate it.
+ *
+ * solve() returns at once; a probe thread expands at most PROBE_NODES nodes of the circuit, in
+ * parallel as CachingCircuitSolver does, and estimates its work (the sequential evaluation time)
+ * and span (the longest chain of dependent leaves). DeclaredLeafNode leaves declare their delay;
+ * the latency of other leaves is learned from circuits evaluated sequentially. Then the circuit is
+ * - evaluated INLINE, by the probe thread itself, if it is tiny and its leaves are instant,
+ * - queued for BATCH evaluation by sequential worker threads, one circuit after another, if
+ *   it is small or has little parallelism (work close to span),
+ * - handed to the PARALLEL engine otherwise, or if it is too big or too slow to expand.
+ * Circuits are evaluated from the expanded copy, also when the probe gave up halfway, so no
+ * getArgs() call is repeated. The route of every value is recorded; circuits the solver does not
+ * evaluate, as it has been stopped, are REJECTED.
+ */
+public class HybridCircuitSolver implements CircuitSolver {
+    public enum Route { INLINE, BATCH, PARALLEL, REJECTED }
+
+    // Nodes the probe expands at most, bigger circuits go to the parallel engine
+    private static final int PROBE_NODES = 256;
+    // A getArgs() call this slow means the expansion itself is worth doing in parallel
+    private static final long SLOW_ARGS_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    // Estimated cost of visiting a node without waiting for anything
+    private static final long NODE_NANOS = 50;
+    // Work evaluated by the probe thread at most
+    private static final long INLINE_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    // Work from which the parallel engine pays off, if the circuit is parallel enough
+    private static final long PARALLEL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double MIN_PARALLELISM = 2.0;
+    // Weight of the newest observation in the learned leaf latency
+    private static final double HISTORY_WEIGHT = 0.125;
+    private static final long INITIAL_LEAF_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    // Threads of the parallel runtime, per core: enough for leaves blocked 63 out of every 64 units of time
+    private static final int PARALLEL_THREADS_PER_CORE = 64;
+
+    // Probes and the getArgs() calls of their expansions
+    private final ExecutorService probeExecutor;
+    private final ThreadPoolExecutor batchExecutor;
+    private final SolverRuntime runtime;
+    private final ParallelCircuitSolver parallel;
+    private final AtomicBoolean acceptComputations;
+    private final AtomicLongArray routes;
+    // Learned latency of leaves other than DeclaredLeafNode
+    private volatile double leafNanos;
+
+    public HybridCircuitSolver() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.probeExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                SolverRuntime.KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>());
+        this.batchExecutor = new ThreadPoolExecutor(cores, cores,
+                SolverRuntime.KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        this.batchExecutor.allowCoreThreadTimeOut(true);
+        this.runtime = SolverRuntime.adaptive(cores * PARALLEL_THREADS_PER_CORE, SolverRuntime.UNBOUNDED);
+        this.parallel = new ParallelCircuitSolver(runtime);
+        this.acceptComputations = new AtomicBoolean(true);
+        this.routes = new AtomicLongArray(Route.values().length);
+        this.leafNanos = INITIAL_LEAF_NANOS;
+    }
+
+    @Override
+    public RoutedCircuitValue solve(Circuit c) {
+        if (!acceptComputations.get()) {
+            routes.incrementAndGet(Route.REJECTED.ordinal());
+            return new RoutedCircuitValue(null);
+        }
+
+        // Probing calls getArgs(), which may be slow, so it does not run in the caller
+        try {
+            return new RoutedCircuitValue(probeExecutor.submit(() -> route(c)));
+        } catch (RejectedExecutionException e) {
+            routes.incrementAndGet(Route.REJECTED.ordinal());
+            return new RoutedCircuitValue(null);
+        }
+    }
+
+    @Override
+    public void stop() {
+        acceptComputations.set(false);
+        probeExecutor.shutdownNow();
+        // Circuits still queued never run, so they are cancelled for their values not to wait forever
+        for (Runnable r : batchExecutor.shutdownNow()) {
+            ((Future<?>) r).cancel(true);
+        }
+        parallel.stop();
+        runtime.shutdown();
+    }
+
+    /** Number of circuits sent along the route so far. */
+    public long getRouteCount(Route route) {
+        return routes.get(route.ordinal());
+    }
+
+    /** Value of a circuit, together with the way it is evaluated. */
+    public static class RoutedCircuitValue implements CircuitValue {
+        // Route and value chosen by the probe, null if the circuit was rejected right away
+        private final Future<Routing> routing;
+
+        private RoutedCircuitValue(Future<Routing> routing) {
+            this.routing = routing;
+        }
+
+        /** Waits until the circuit has been probed and returns the route chosen for it. */
+        public Route getRoute() throws InterruptedException {
+            if (routing == null) return Route.REJECTED;
+            try {
+                return routing.get().route();
+            } catch (ExecutionException | CancellationException e) {
+                return Route.REJECTED;
+            }
+        }
+
+        @Override
+        public boolean getValue() throws InterruptedException {
+            if (routing == null) throw new InterruptedException();
+            try {
+                return routing.get().value().getValue();
+            } catch (ExecutionException | CancellationException e) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private record Routing(Route route, CircuitValue value) {
+    }
+
+    // Function to probe the circuit and start evaluating it along the route chosen
+    private Routing route(Circuit c) {
+        AtomicInteger nodes = new AtomicInteger(0);
+        CircuitExpansion expansion;
+        try {
+            expansion = CircuitExpansion.expand(c, probeExecutor,
+                    (n, argsNanos) -> nodes.incrementAndGet() <= PROBE_NODES && argsNanos <= SLOW_ARGS_NANOS);
+        } catch (InterruptedException e) {
+            return routed(Route.REJECTED, new ParallelCircuitValue(true));
+        }
+        if (!expansion.isComplete()) return routed(Route.PARALLEL, parallel.solve(expansion.circuit()));
+
+        Estimate estimate = estimate(expansion);
+        return switch (choose(estimate)) {
+            case INLINE -> evaluateInline(estimate);
+            case BATCH -> evaluateInBatch(estimate);
+            default -> routed(Route.PARALLEL, parallel.solve(estimate.circuit));
+        };
+    }
+
+    private Routing routed(Route route, CircuitValue value) {
+        routes.incrementAndGet(route.ordinal());
+        return new Routing(route, value);
+    }
+
+    // Function to pick a route for a fully expanded circuit
+    private Route choose(Estimate e) {
+        double work = (double) e.nodes * NODE_NANOS + e.sleepyNanos + e.otherLeaves * leafNanos;
+        double span = e.spanNanos + e.spanOtherLeaves * leafNanos;
+        if (work <= INLINE_NANOS) return Route.INLINE;
+        if (work >= PARALLEL_NANOS && work >= MIN_PARALLELISM * span) return Route.PARALLEL;
+        return Route.BATCH;
+    }
+
+    private Routing evaluateInline(Estimate e) {
+        try {
+            return routed(Route.INLINE, new SolvedCircuitValue(evaluateSequentially(e)));
+        } catch (InterruptedException ex) {
+            return routed(Route.REJECTED, new ParallelCircuitValue(true));
+        }
+    }
+
+    private Routing evaluateInBatch(Estimate e) {
+        FutureTask<Boolean> task = new FutureTask<>(() -> evaluateSequentially(e));
+        try {
+            batchExecutor.execute(task);
+            return routed(Route.BATCH, new ParallelCircuitValue(task));
+        } catch (RejectedExecutionException ex) {
+            return routed(Route.REJECTED, new ParallelCircuitValue(true));
+        }
+    }
+
+    // Function to evaluate the expanded circuit and learn the latency of its leaves of unknown delay
+    private boolean evaluateSequentially(Estimate e) throws InterruptedException {
+        long start = System.nanoTime();
+        boolean value = SequentialEvaluator.evaluate(e.circuit.getRoot());
+        if (e.otherLeaves > 0) {
+            // Skipped leaves make the others look faster; racing updates only lose observations
+            double observed = Math.max(0.0, (System.nanoTime() - start - e.nodes * NODE_NANOS - e.sleepyNanos))
+                    / e.otherLeaves;
+            leafNanos += HISTORY_WEIGHT * (observed - leafNanos);
+        }
+        return value;
+    }
+
+    // Function to total the work and span of a fully expanded circuit
+    private Estimate estimate(CircuitExpansion expansion) {
+        // Post-order walk with an explicit stack, as in CircuitFingerprint
+        ArrayDeque<Frame> frames = new ArrayDeque<>();
+        Frame[] done = new Frame[16];
+        int top = 0;
+        int nodes = 0;
+
+        CircuitExpansion.Node n = expansion.root();
+        while (true) {
+            if (n != null) {
+                nodes++;
+                CircuitExpansion.Node[] args = n.args();
+                if (args != null) {
+                    frames.push(new Frame(args, top));
+                    n = null;
+                    continue;
+                }
+                Frame f = new Frame(null, top);
+                if (n.node() instanceof DeclaredLeafNode leaf) {
+                    f.sleepyNanos = f.spanNanos = leaf.getDelay().toNanos();
+                } else {
+                    f.otherLeaves = f.spanOtherLeaves = 1;
+                }
+                if (top == done.length) done = Arrays.copyOf(done, top * 2);
+                done[top++] = f;
+                n = null;
+            }
+
+            Frame f = frames.peek();
+            if (f == null) {
+                Frame root = done[0];
+                return new Estimate(expansion.circuit(), nodes, root.sleepyNanos, root.otherLeaves,
+                        root.spanNanos, root.spanOtherLeaves);
+            }
+            if (f.next < f.args.length) {
+                n = f.args[f.next++];
+                continue;
+            }
+
+            frames.pop();
+            for (int i = f.base; i < top; i++) {
+                Frame a = done[i];
+                f.sleepyNanos += a.sleepyNanos;
+                f.otherLeaves += a.otherLeaves;
+                // The span follows the argument with the longest chain
+                if (a.spanNanos + a.spanOtherLeaves * leafNanos > f.spanNanos + f.spanOtherLeaves * leafNanos) {
+                    f.spanNanos = a.spanNanos;
+                    f.spanOtherLeaves = a.spanOtherLeaves;
+                }
+                done[i] = null;
+            }
+            f.spanNanos += NODE_NANOS;
+            top = f.base;
+            done[top++] = f;
+        }
+    }
+
+    private record Estimate(Circuit circuit, int nodes, long sleepyNanos, long otherLeaves,
+                            long spanNanos, long spanOtherLeaves) {
+    }
+
+    // Node of the estimate walk; once finished, the totals of its subtree
+    private static final class Frame {
+        private final CircuitExpansion.Node[] args;
+        private final int base;
+        private int next = 0;
+        private long sleepyNanos = 0;
+        private long otherLeaves = 0;
+        private long spanNanos = 0;
+        private long spanOtherLeaves = 0;
+
+        private Frame(CircuitExpansion.Node[] args, int base) {
+            this.args = args;
+            this.base = base;
+        }
+    }
+}
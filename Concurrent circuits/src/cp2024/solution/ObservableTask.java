@@ -0,0 +1,77 @@
+package cp2024.solution;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// Task evaluating a node, completed as soon as its value is decided, which may be before its
+// computation returns, and running registered actions then, so that nobody has to block in get()
+// to learn about it
+class ObservableTask extends FutureTask<Boolean> implements ArgsEvaluation.Decision {
+    private final ConcurrentLinkedQueue<Runnable> listeners;
+
+    // Computation of the task's value, handed the task to tell it the value early
+    interface Body {
+        boolean compute(ArgsEvaluation.Decision self) throws Exception;
+    }
+
+    ObservableTask(Body body) {
+        this(new SelfCall(body));
+    }
+
+    private ObservableTask(SelfCall call) {
+        super(call);
+        this.listeners = new ConcurrentLinkedQueue<>();
+        call.task = this;
+    }
+
+    // Function to complete the task with the value its arguments decided, the computation's own
+    // result is then ignored
+    @Override
+    public void decide(boolean value) {
+        set(value);
+    }
+
+    // Function to run the action when the task completes, or right away if it already has
+    void whenDone(Runnable action) {
+        listeners.add(action);
+        // Whoever removes the action runs it: done() or this thread, if done() could have missed it
+        if (isDone() && listeners.remove(action)) action.run();
+    }
+
+    // Function to tell the value of the task if it is decided, without waiting
+    CircuitState getState() {
+        if (!isDone() || isCancelled()) return CircuitState.UNKNOWN;
+        try {
+            return get() ? CircuitState.TRUE : CircuitState.FALSE;
+        } catch (ExecutionException | InterruptedException e) {
+            return CircuitState.UNKNOWN;
+        }
+    }
+
+    @Override
+    protected void done() {
+        Runnable action;
+        while ((action = listeners.poll()) != null) {
+            action.run();
+        }
+    }
+
+    // Callable passing the body its task, which exists only once the FutureTask is constructed
+    private static final class SelfCall implements Callable<Boolean> {
+        private final Body body;
+        // Set by the constructor of the task, before the task is handed to any thread
+        private ObservableTask task;
+
+        private SelfCall(Body body) {
+            this.body = body;
+            this.task = null;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            return body.compute(task);
+        }
+    }
+}
@@ -3,44 +3,71 @@ package cp2024.solution;
 import cp2024.circuit.*;
 import cp2024.demo.BrokenCircuitValue;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ParallelCircuitSolver implements CircuitSolver {
     // Constant specifying the keep-alive time for threads in the pool
-    public static final long KEEP_ALIVE_TIME = 60L; // in milliseconds
-    private ExecutorService executorService;
-    private AtomicBoolean acceptComputations;
+    public static final long KEEP_ALIVE_TIME = SolverRuntime.KEEP_ALIVE_TIME; // in milliseconds
+    private final SolverRuntime runtime;
+    // Whether the runtime was created for this solver alone and has to be shut down by stop()
+    private final boolean ownsRuntime;
+    private final SolverRuntime.Tenant tenant;
+    private final ExecutorService executorService;
+    private final AtomicBoolean acceptComputations;
+    // Root tasks of this solver that have not finished yet
+    private final Set<RootTask> pendingRoots;
 
     public ParallelCircuitSolver() {
-        this.executorService = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
-                KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
-                new SynchronousQueue<>());
+        this(new SolverRuntime(SolverRuntime.UNBOUNDED, SolverRuntime.UNBOUNDED), true);
+    }
+
+    /** Creates a lightweight solver handle running on the given, possibly shared, runtime. */
+    public ParallelCircuitSolver(SolverRuntime runtime) {
+        this(runtime, false);
+    }
+
+    private ParallelCircuitSolver(SolverRuntime runtime, boolean ownsRuntime) {
+        this.runtime = runtime;
+        this.ownsRuntime = ownsRuntime;
+        this.tenant = runtime.attach();
+        this.executorService = runtime.executor();
         this.acceptComputations = new AtomicBoolean(true);
+        this.pendingRoots = ConcurrentHashMap.newKeySet();
     }
 
     @Override
-    public CircuitValue solve(Circuit c) {
+    public ParallelCircuitValue solve(Circuit c) {
         // Check if acceptComputations is false, if so return a circuit value that throws an exception
         if (!acceptComputations.get())
             return new ParallelCircuitValue(true);
 
-        Future<Boolean> future = null;
+        RootTask future = new RootTask(self -> tracked(() -> evaluateRoot(c.getRoot(), self)));
+        pendingRoots.add(future);
+
+        // A concurrent stop() might have missed the task, so check again after registering it
+        if (!acceptComputations.get()) {
+            future.cancel(true);
+            return new ParallelCircuitValue(true);
+        }
 
         // Launch callable to calculate value for the root node
         try {
-            future = executorService.submit(() -> evaluateValue(c.getRoot()));
+            runtime.rootExecutor().execute(future);
             return new ParallelCircuitValue(future);
 
         } catch (RejectedExecutionException e) {
             // Executor does not accept new submissions
-            if (future != null) future.cancel(true);
+            future.cancel(true);
             return new ParallelCircuitValue(true);
 
         } catch (Exception e){
             // Handling unexpected exceptions
-            if (future != null) future.cancel(true);
+            future.cancel(true);
             return new ParallelCircuitValue(true);
         }
     }
@@ -48,100 +75,169 @@ public class ParallelCircuitSolver implements CircuitSolver {
     @Override
     public void stop() {
         acceptComputations.set(false);
-        // Set the interrupted flags for all callables to make them finish their work
-        executorService.shutdownNow();
+        // Interrupt the roots of this solver's circuits, they cancel their subtrees in turn
+        for (Future<Boolean> f : pendingRoots) {
+            f.cancel(true);
+        }
+        if (ownsRuntime) runtime.shutdown();
+    }
+
+    /**
+     * Stops accepting new circuits, lets the pending ones finish within drainBudget, interrupts
+     * the rest and returns once no thread computes anything for this solver anymore.
+     * If the calling thread is interrupted, everything is interrupted right away, without waiting.
+     */
+    public StopReport stop(Duration drainBudget) throws InterruptedException {
+        long start = System.nanoTime();
+        acceptComputations.set(false);
+
+        // Roots registered after this point see the flag and cancel themselves
+        List<RootTask> roots = new ArrayList<>(pendingRoots);
+        CountDownLatch drained = new CountDownLatch(roots.size());
+        for (RootTask r : roots) {
+            r.whenDone(drained::countDown);
+        }
+        try {
+            drained.await(drainBudget.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            stop();
+            throw e;
+        }
+        long drainedAt = System.nanoTime();
+
+        stop();
+        tenant.awaitIdle();
+        if (ownsRuntime) runtime.awaitTermination();
+        long quiescentAt = System.nanoTime();
+
+        int completed = 0;
+        for (RootTask r : roots) {
+            if (r.getState() != CircuitState.UNKNOWN) completed++;
+        }
+        return new StopReport(completed, roots.size() - completed,
+                Duration.ofNanos(drainedAt - start), Duration.ofNanos(quiescentAt - drainedAt));
+    }
+
+    /**
+     * Outcome of a stop: circuits pending at the moment of the stop that got their values and
+     * those that were interrupted, time spent waiting for them and time it took the interrupted
+     * computations to exit.
+     */
+    public record StopReport(int completed, int interrupted, Duration drainTime, Duration quiescenceTime) {
+    }
+
+    // Function to run a part of a computation, so that stop can wait for it to exit
+    private boolean tracked(Callable<Boolean> task) throws Exception {
+        tenant.enter();
+        try {
+            return task.call();
+        } finally {
+            tenant.exit();
+        }
+    }
+
+    // Function to calculate the value of the root node, starting the expansion of the circuit first
+    private boolean evaluateRoot(CircuitNode root, ArgsEvaluation.Decision decision) throws InterruptedException {
+        return evaluateValue(root, ArgsExpansion.start(root, tenant), decision);
     }
 
-    // Function to calculate the value of the circuit node
-    private boolean evaluateValue(CircuitNode n) throws InterruptedException {
+    // Function to calculate the value of a leaf within the leaf budget of this solver
+    private boolean evaluateLeaf(LeafNode leaf) throws InterruptedException {
+        tenant.acquireLeaf();
+        long token = runtime.startBlocking();
+        try {
+            return leaf.getValue();
+        } finally {
+            runtime.endBlocking(token);
+            tenant.releaseLeaf();
+        }
+    }
+
+    // Function to calculate the value of the circuit node, whose arguments are being expanded by e;
+    // decision is told the value of a gate as soon as the values of its arguments decide it
+    private boolean evaluateValue(CircuitNode n, ArgsExpansion e, ArgsEvaluation.Decision decision)
+            throws InterruptedException {
         // Checking if the thread has been interrupted
         if (Thread.currentThread().isInterrupted()) {
+            if (e != null) e.cancel();
             throw new InterruptedException();
         }
 
         // Evaluate leaf node value
         if (n.getType() == NodeType.LEAF)
-            return ((LeafNode) n).getValue();
+            return evaluateLeaf((LeafNode) n);
 
-        CircuitNode[] args = n.getArgs();
+        // Nodes without expansion do not depend on their arguments (LT with non-positive threshold)
+        if (e == null) return false;
 
-        int threshold = 0;
-        if (n.getType() == NodeType.GT || n.getType() == NodeType.LT) {
-            threshold = ((ThresholdNode) n).getThreshold();
+        try {
+            // Wait for the arguments, the expansion of their own arguments is already running
+            CircuitNode[] args = e.getArgs();
 
-            // Check if the value can be determined without calculation
-            if (n.getType() == NodeType.LT && threshold <= 0) return false;
-            if (n.getType() == NodeType.GT && threshold >= n.getArgs().length) return false;
-            if (n.getType() == NodeType.LT && threshold > n.getArgs().length) return true;
-        }
+            int threshold = 0;
+            if (n.getType() == NodeType.GT || n.getType() == NodeType.LT) {
+                threshold = ((ThresholdNode) n).getThreshold();
+
+                // Check if the value can be determined without calculation
+                if (n.getType() == NodeType.GT && threshold >= args.length) return false;
+                if (n.getType() == NodeType.LT && threshold > args.length) return true;
+            }
 
-        return switch (n.getType()) {
-            case IF -> solveIF(args);
-            case AND -> solveAOGL(args, args.length, args.length, 0, 0);
-            case OR -> solveAOGL(args, 1, args.length, 0, args.length - 1);
-            case GT -> solveAOGL(args, threshold + 1, args.length, 0, args.length - threshold - 1);
-            case LT -> solveAOGL(args, 0, threshold - 1, args.length - threshold + 1, args.length);
-            case NOT -> solveNOT(args);
-            default -> throw new RuntimeException("Illegal type " + n.getType());
-        };
+            return switch (n.getType()) {
+                case IF -> solveIF(args, e, decision);
+                case AND -> solveAOGL(args, e, decision, args.length, args.length, 0, 0);
+                case OR -> solveAOGL(args, e, decision, 1, args.length, 0, args.length - 1);
+                case GT -> solveAOGL(args, e, decision, threshold + 1, args.length, 0, args.length - threshold - 1);
+                case LT -> solveAOGL(args, e, decision, 0, threshold - 1, args.length - threshold + 1, args.length);
+                case NOT -> solveNOT(args, e, decision);
+                default -> throw new RuntimeException("Illegal type " + n.getType());
+            };
+        } finally {
+            // The value is known or will never be, so expanding the subtree further is wasted work
+            e.cancel();
+        }
     }
 
     // Function to calculate the value of the NOT type circuit node
-    private boolean solveNOT(CircuitNode[] args) throws InterruptedException {
-        return !evaluateValue(args[0]);
+    private boolean solveNOT(CircuitNode[] args, ArgsExpansion e, ArgsEvaluation.Decision decision)
+            throws InterruptedException {
+        return !evaluateValue(args[0], e.child(0), value -> decision.decide(!value));
     }
 
-    private Future<Boolean> submitEvaluate(CircuitNode n, ExecutorCompletionService<Boolean> completionService) throws InterruptedException{
-        return completionService.submit(() -> evaluateValue(n));
+    private Future<Boolean> submitEvaluate(CircuitNode n, ArgsExpansion e, ArgsEvaluation evaluation) {
+        return evaluation.fork(self -> tracked(() -> evaluateValue(n, e, self)));
     }
 
     // Function to lazily calculate the value of the IF type circuit node
-    private boolean solveIF(CircuitNode[] args) throws InterruptedException {
-        // Create an ExecutionCompletionService based on the global executorService
-        ExecutorCompletionService<Boolean> completionService = new ExecutorCompletionService<>(executorService);
-
-        // Create callables to calculate the result for each node argument
-        Future<Boolean> condition = null;
-        Future<Boolean> tValue = null;
-        Future<Boolean> fValue = null;
+    private boolean solveIF(CircuitNode[] args, ArgsExpansion e, ArgsEvaluation.Decision decision)
+            throws InterruptedException {
+        // Arguments no pool thread is free for are evaluated by this thread while it waits
+        ArgsEvaluation evaluation = new ArgsEvaluation(executorService, 3, decision, (trues, falses, values) -> {
+            if (values[0] != null) return values[values[0] ? 1 : 2];
+            return values[1] != null && values[1].equals(values[2]) ? values[1] : null;
+        });
 
         try {
-            condition = submitEvaluate(args[0], completionService);
-            tValue = submitEvaluate(args[1], completionService);
-            fValue = submitEvaluate(args[2], completionService);
-
-        } catch (InterruptedException e) {
-            // If creating any future fails, cancel the rest and throw an InterruptedException
-            if (condition != null) condition.cancel(true);
-            if (tValue != null) tValue.cancel(true);
-            if (fValue != null) fValue.cancel(true);
-            Thread.currentThread().interrupt();
-            throw e;
-        }
+            // Create callables to calculate the result for each node argument
+            Future<Boolean> condition = submitEvaluate(args[0], e.child(0), evaluation);
+            Future<Boolean> tValue = submitEvaluate(args[1], e.child(1), evaluation);
+            Future<Boolean> fValue = submitEvaluate(args[2], e.child(2), evaluation);
 
-        for (int i = 0; i < 3; i++) {
-            // Check if the thread was interrupted before each operation
-            if (Thread.currentThread().isInterrupted()) {
-                // Interrupt all the callables started by me and throw an InterruptedException
-                condition.cancel(true);
-                tValue.cancel(true);
-                fValue.cancel(true);
-                Thread.currentThread().interrupt();
-                throw new InterruptedException();
-            }
+            for (int i = 0; i < 3; i++) {
+                // Check if the thread was interrupted before each operation
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
 
-            try {
                 // Wait for any callable to complete
-                completionService.take();
+                evaluation.take();
 
                 // If the condition is calculated, return the appropriate result and cancel unnecessary callables
                 if (condition.isDone()) {
                     if (condition.get()) {
                         fValue.cancel(true);
-                        return tValue.get();
+                        return evaluation.join(tValue);
                     } else {
                         tValue.cancel(true);
-                        return fValue.get();
+                        return evaluation.join(fValue);
                     }
                 }
 
@@ -150,22 +246,20 @@ public class ParallelCircuitSolver implements CircuitSolver {
                     condition.cancel(true);
                     return tValue.get();
                 }
-
-            } catch (InterruptedException | ExecutionException e) {
-                // Interrupt all the callables started by me and throw an InterruptedException
-                condition.cancel(true);
-                tValue.cancel(true);
-                fValue.cancel(true);
-                throw new InterruptedException();
             }
-        }
 
-        try {
-            if (condition.get()) return tValue.get();
-            return fValue.get();
+            return evaluation.join(condition) ? tValue.get() : fValue.get();
 
-        } catch (ExecutionException e) {
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw ex;
+
+        } catch (ExecutionException | CancellationException ex) {
             throw new InterruptedException();
+
+        } finally {
+            // Interrupt all the callables started by me that are still running
+            evaluation.cancel();
         }
     }
 
@@ -175,53 +269,33 @@ public class ParallelCircuitSolver implements CircuitSolver {
                 (trueCounter >= minTrue && falseCounter >= minFalse);
     }
 
-    // Function to cancel all tasks created by a given thread
-    private void cancelAllTasks(ArrayList<Future<Boolean>> taskList) {
-        for (Future<Boolean> f : taskList) {
-            f.cancel(true);
-        }
-    }
-
     // Function to lazily calculate the value of AND, OR, GT, and LT type circuit nodes
-    private boolean solveAOGL(CircuitNode[] args, int minTrue, int maxTrue, int minFalse, int maxFalse) throws InterruptedException {
-        // Create an ExecutionCompletionService based on the ParallelCircuitSolver's executorService
-        ExecutorCompletionService<Boolean> completionService = new ExecutorCompletionService<>(executorService);
-
-        // List of futures created by this thread's callables
-        ArrayList<Future<Boolean>> taskList = new ArrayList<>();
-
-        Future<Boolean> future;
-
-        // Create callables for evaluateValue for each child node
-        for (CircuitNode c : args) {
-            try {
-                future = submitEvaluate(c, completionService);
-
-            } catch (InterruptedException e) {
-                // If creating any callable fails, cancel all callables
-                cancelAllTasks(taskList);
-                Thread.currentThread().interrupt();
-                throw e;
-            }
-            taskList.add(future);
-        }
+    private boolean solveAOGL(CircuitNode[] args, ArgsExpansion e, ArgsEvaluation.Decision decision,
+                              int minTrue, int maxTrue, int minFalse, int maxFalse) throws InterruptedException {
+        // Arguments no pool thread is free for are evaluated by this thread while it waits
+        ArgsEvaluation evaluation = new ArgsEvaluation(executorService, args.length, decision, (trues, falses, values) ->
+                canReturnEarly(trues, falses, minTrue, maxTrue, minFalse, maxFalse)
+                        ? trues >= minTrue && falses >= minFalse
+                        : null);
 
         int trueCounter = 0;
         int falseCounter = 0;
+        int submitted = 0;
 
-        // Receive results in the order the tasks finish
-        for (int i = 0; i < args.length; i++) {
-            // Check if the isInterrupted flag is set to true
-            if (Thread.currentThread().isInterrupted()) {
-                // If the thread is interrupted, cancel all my callables and throw an InterruptedException
-                cancelAllTasks(taskList);
-                Thread.currentThread().interrupt();
-                throw new InterruptedException();
-            }
-
-            try {
-                // Get the calculated future from the queue of completed tasks
-                Future<Boolean> calculatedFuture = completionService.take();
+        try {
+            // Receive results in the order the tasks finish
+            for (int i = 0; i < args.length; i++) {
+                // Check if the isInterrupted flag is set to true
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+
+                // Submit the remaining arguments until a result comes in, which may make them unnecessary
+                Future<Boolean> calculatedFuture = evaluation.poll();
+                while (calculatedFuture == null && submitted < args.length) {
+                    submitEvaluate(args[submitted], e.child(submitted), evaluation);
+                    submitted++;
+                    calculatedFuture = evaluation.poll();
+                }
+                if (calculatedFuture == null) calculatedFuture = evaluation.take();
 
                 // Update true and false counters
                 if (calculatedFuture.get()) trueCounter++;
@@ -229,18 +303,36 @@ public class ParallelCircuitSolver implements CircuitSolver {
 
                 // Check if we can lazily finish the calculation of the result
                 if (canReturnEarly(trueCounter, falseCounter, minTrue, maxTrue, minFalse, maxFalse)) {
-                    cancelAllTasks(taskList);
                     return trueCounter >= minTrue && falseCounter >= minFalse;
                 }
-
-            } catch (InterruptedException | ExecutionException e) {
-                cancelAllTasks(taskList);
-                Thread.currentThread().interrupt();
-                throw new InterruptedException();
             }
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw ex;
+
+        } catch (ExecutionException | CancellationException ex) {
+            throw new InterruptedException();
+
+        } finally {
+            // Cancel all callables created by me
+            evaluation.cancel();
         }
 
         return (!(trueCounter > maxTrue || falseCounter > maxFalse)
                 && (trueCounter >= minTrue && falseCounter >= minFalse));
     }
+
+    // Task evaluating the root of a circuit, forgotten by the solver once it finishes
+    private class RootTask extends ObservableTask {
+        private RootTask(Body body) {
+            super(body);
+        }
+
+        @Override
+        protected void done() {
+            pendingRoots.remove(this);
+            super.done();
+        }
+    }
 }
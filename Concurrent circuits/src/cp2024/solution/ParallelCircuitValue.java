@@ -46,4 +46,34 @@ public class ParallelCircuitValue implements CircuitValue {
         // At this point isCalculated is true, so the value has been computed, and it can be returned
         return value;
     }
+
+    /** Returns the value if the values of the arguments of the root already decide it, without waiting. */
+    public CircuitState getState() {
+        if (isInterrupted) return CircuitState.UNKNOWN;
+        if (future instanceof ObservableTask task) return task.getState();
+        if (!future.isDone() || future.isCancelled()) return CircuitState.UNKNOWN;
+        try {
+            return future.get() ? CircuitState.TRUE : CircuitState.FALSE;
+        } catch (ExecutionException | InterruptedException e) {
+            return CircuitState.UNKNOWN;
+        }
+    }
+
+    // Function to stop computing a value nobody is going to wait for
+    void cancel() {
+        if (future != null) future.cancel(true);
+    }
+
+    // Function to run the action once the value is known or lost, returns false if it cannot be observed
+    boolean whenResolved(Runnable action) {
+        if (isInterrupted) {
+            action.run();
+            return true;
+        }
+        if (future instanceof ObservableTask task) {
+            task.whenDone(action);
+            return true;
+        }
+        return false;
+    }
 }
@@ -0,0 +1,164 @@
+package cp2024.solution;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent map from circuit fingerprints to circuit values, kept in a memory-mapped file.
+ *
+ * The file is a log of fixed-size records written in sequence into a ring of slots, so its
+ * size never changes and, once the ring is full, every new record evicts the oldest one.
+ * Each record carries its sequence number and a checksum written last, so a record torn by
+ * a crash is simply ignored when the file is reopened. An in-memory index, rebuilt from the
+ * file on open, maps fingerprints to their newest record.
+ *
+ * Record layout (big-endian): long sequence, long high, long low, byte value, 3 bytes padding,
+ * int CRC-32 of the preceding 28 bytes. Sequence zero marks an empty slot.
+ */
+public class ResultStore implements AutoCloseable {
+    private static final int MAGIC = 0x43505253; // "CPRS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = 32;
+    private static final int CHECKED_BYTES = 28;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    // Slot of the newest record of every stored fingerprint
+    private final HashMap<CircuitFingerprint, Integer> index;
+    private long nextSequence;
+
+    private ResultStore(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.index = new HashMap<>();
+        this.nextSequence = 1;
+    }
+
+    /**
+     * Opens the store, creating the file if needed, and recovers every intact record.
+     * A new file holds at most {@code capacity} results; an existing one keeps its own capacity.
+     */
+    public static ResultStore open(Path file, int capacity) throws IOException {
+        if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES) {
+            throw new IllegalArgumentException("Illegal capacity " + capacity);
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() >= HEADER_BYTES) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException("Not a result store: " + file);
+                }
+                capacity = header.getInt(8);
+                if (capacity < 1 || channel.size() < HEADER_BYTES + (long) capacity * RECORD_BYTES) {
+                    throw new IOException("Corrupt result store header: " + file);
+                }
+            }
+
+            long size = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                // A new (zero-filled) file: every slot is empty, the header goes in last
+                buffer.putInt(8, capacity);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(0, MAGIC);
+                buffer.force();
+            }
+
+            ResultStore store = new ResultStore(channel, buffer, capacity);
+            store.recover();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /** Returns the stored value, or null if the fingerprint is unknown. */
+    public synchronized Boolean get(CircuitFingerprint fingerprint) {
+        Integer slot = index.get(fingerprint);
+        if (slot == null) return null;
+        return buffer.get(offset(slot) + 24) != 0;
+    }
+
+    public synchronized void put(CircuitFingerprint fingerprint, boolean value) {
+        Integer known = index.get(fingerprint);
+        if (known != null && (buffer.get(offset(known) + 24) != 0) == value) return;
+
+        long sequence = nextSequence++;
+        int slot = (int) ((sequence - 1) % capacity);
+        int offset = offset(slot);
+
+        // Evict the record being overwritten, unless a newer record of its fingerprint exists
+        if (buffer.getLong(offset) != 0) {
+            CircuitFingerprint evicted = new CircuitFingerprint(buffer.getLong(offset + 8), buffer.getLong(offset + 16));
+            index.remove(evicted, slot);
+        }
+
+        // Invalidate the slot first, so that a crash in the middle never leaves a valid-looking mix
+        buffer.putInt(offset + CHECKED_BYTES, 0);
+        buffer.putLong(offset, sequence);
+        buffer.putLong(offset + 8, fingerprint.high());
+        buffer.putLong(offset + 16, fingerprint.low());
+        buffer.putInt(offset + 24, value ? 1 << 24 : 0);
+        buffer.putInt(offset + CHECKED_BYTES, checksum(offset));
+
+        index.put(fingerprint, slot);
+    }
+
+    /** Writes all stored results through to the file. */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // Rebuilds the index and the next sequence number from the intact records of the file
+    private void recover() {
+        long[] sequences = new long[capacity];
+        long newest = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = offset(slot);
+            long sequence = buffer.getLong(offset);
+            if (sequence <= 0 || buffer.getInt(offset + CHECKED_BYTES) != checksum(offset)) continue;
+
+            sequences[slot] = sequence;
+            newest = Math.max(newest, sequence);
+            CircuitFingerprint fingerprint = new CircuitFingerprint(buffer.getLong(offset + 8), buffer.getLong(offset + 16));
+            index.merge(fingerprint, slot, (a, b) -> sequences[a] > sequences[b] ? a : b);
+        }
+        nextSequence = newest + 1;
+    }
+
+    private int checksum(int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, CHECKED_BYTES));
+        return (int) crc.getValue();
+    }
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+}
@@ -0,0 +1,156 @@
+package cp2024.solution;
+
+import cp2024.circuit.*;
+
+import java.util.Arrays;
+
+/**
+ * Single-threaded evaluation of a circuit in the calling thread. Every node stops evaluating its
+ * arguments as soon as its value is decided, and the circuit is walked with an explicit stack
+ * reused between circuits of the same thread, so deep circuits do not overflow the call stack and
+ * no memory is allocated per node.
+ */
+public final class SequentialEvaluator {
+    private static final int INITIAL_DEPTH = 64;
+    // Stacks of threads not evaluating a circuit at the moment, taken by the next circuit they evaluate
+    private static final ThreadLocal<SequentialEvaluator> EVALUATORS = ThreadLocal.withInitial(SequentialEvaluator::new);
+
+    // One frame per inner node on the path from the root
+    private CircuitNode[] nodes = new CircuitNode[INITIAL_DEPTH];
+    private CircuitNode[][] args = new CircuitNode[INITIAL_DEPTH][];
+    // Index of the next argument to evaluate
+    private int[] next = new int[INITIAL_DEPTH];
+    private int[] trues = new int[INITIAL_DEPTH];
+    private int[] falses = new int[INITIAL_DEPTH];
+    private int top = 0;
+    private boolean busy = false;
+
+    private SequentialEvaluator() {
+    }
+
+    /** Computes the value of the circuit rooted at the node, throws if the thread gets interrupted. */
+    public static boolean evaluate(CircuitNode root) throws InterruptedException {
+        SequentialEvaluator e = EVALUATORS.get();
+        if (e.busy) {
+            // A leaf evaluating another circuit on this thread, the stack in use cannot be shared
+            return new SequentialEvaluator().evaluateRoot(root);
+        }
+        return e.evaluateRoot(root);
+    }
+
+    private boolean evaluateRoot(CircuitNode root) throws InterruptedException {
+        busy = true;
+        try {
+            return run(root);
+        } finally {
+            Arrays.fill(nodes, 0, top, null);
+            Arrays.fill(args, 0, top, null);
+            top = 0;
+            busy = false;
+        }
+    }
+
+    private boolean run(CircuitNode n) throws InterruptedException {
+        boolean value = false;
+        while (true) {
+            // Descend into n until a value is known without evaluating anything below
+            boolean known = false;
+            while (!known) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+
+                if (n.getType() == NodeType.LEAF) {
+                    value = ((LeafNode) n).getValue();
+                    known = true;
+                } else if (n.getType() == NodeType.LT && ((ThresholdNode) n).getThreshold() == 0) {
+                    value = false;
+                    known = true;
+                } else {
+                    CircuitNode[] a = n.getArgs();
+                    int threshold = n instanceof ThresholdNode t ? t.getThreshold() : 0;
+                    if (n.getType() == NodeType.GT && threshold >= a.length) {
+                        value = false;
+                        known = true;
+                    } else if (n.getType() == NodeType.LT && threshold > a.length) {
+                        value = true;
+                        known = true;
+                    } else {
+                        push(n, a);
+                        n = a[0];
+                    }
+                }
+            }
+
+            // Hand the value up until some node still needs another argument
+            while (true) {
+                if (top == 0) return value;
+                int f = top - 1;
+                CircuitNode[] a = args[f];
+                int i = next[f];
+                if (value) trues[f]++;
+                else falses[f]++;
+
+                Boolean decided = switch (nodes[f].getType()) {
+                    case AND -> !value ? Boolean.FALSE : i == a.length ? Boolean.TRUE : null;
+                    case OR -> value ? Boolean.TRUE : i == a.length ? Boolean.FALSE : null;
+                    case NOT -> !value;
+                    // The condition is the first argument, then exactly one branch is evaluated
+                    case IF -> i == 1 ? null : value;
+                    case GT -> decideGT(trues[f], falses[f], a.length, ((ThresholdNode) nodes[f]).getThreshold());
+                    case LT -> decideLT(trues[f], falses[f], a.length, ((ThresholdNode) nodes[f]).getThreshold());
+                    default -> throw new RuntimeException("Illegal type " + nodes[f].getType());
+                };
+
+                if (decided != null) {
+                    value = decided;
+                    pop();
+                    continue;
+                }
+
+                if (nodes[f].getType() == NodeType.IF) {
+                    next[f] = a.length;
+                    n = value ? a[1] : a[2];
+                } else {
+                    next[f] = i + 1;
+                    n = a[i];
+                }
+                break;
+            }
+        }
+    }
+
+    // More than threshold true arguments
+    private static Boolean decideGT(int trues, int falses, int count, int threshold) {
+        if (trues > threshold) return Boolean.TRUE;
+        if (count - falses <= threshold) return Boolean.FALSE;
+        return null;
+    }
+
+    // Fewer than threshold true arguments
+    private static Boolean decideLT(int trues, int falses, int count, int threshold) {
+        if (trues >= threshold) return Boolean.FALSE;
+        if (count - falses < threshold) return Boolean.TRUE;
+        return null;
+    }
+
+    private void push(CircuitNode n, CircuitNode[] a) {
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            args = Arrays.copyOf(args, top * 2);
+            next = Arrays.copyOf(next, top * 2);
+            trues = Arrays.copyOf(trues, top * 2);
+            falses = Arrays.copyOf(falses, top * 2);
+        }
+        nodes[top] = n;
+        args[top] = a;
+        next[top] = 1;
+        trues[top] = 0;
+        falses[top] = 0;
+        top++;
+    }
+
+    private void pop() {
+        top--;
+        nodes[top] = null;
+        args[top] = null;
+    }
+}
@@ -0,0 +1,17 @@
+package cp2024.solution;
+
+import cp2024.circuit.CircuitValue;
+
+// Value of a circuit known at the moment it was solved
+class SolvedCircuitValue implements CircuitValue {
+    private final boolean value;
+
+    SolvedCircuitValue(boolean value) {
+        this.value = value;
+    }
+
+    @Override
+    public boolean getValue() {
+        return value;
+    }
+}
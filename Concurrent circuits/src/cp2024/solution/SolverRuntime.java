@@ -0,0 +1,390 @@
+package cp2024.solution;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Threads and leaf-call budget shared by any number of ParallelCircuitSolver handles.
+ *
+ * A quarter of maxThreads, at most ROOT_THREADS_PER_CORE per core, evaluates the roots of
+ * solved circuits, taken in order of arrival from a queue, and the rest evaluates their subtrees. When all subtree threads are busy, the
+ * evaluation of an argument is left to the thread of its gate, which evaluates such arguments
+ * one at a time while it waits for the others and stops as soon as its value is decided. A queue
+ * could deadlock with parents blocked on their children. Argument prefetches are skipped and
+ * done on demand by the evaluation that needs them. At most maxConcurrentLeaves calls to
+ * LeafNode.getValue() run at once, and every handle that wants to call a leaf gets an equal
+ * share of this budget.
+ *
+ * With both budgets UNBOUNDED, roots and subtrees share a single pool that grows as needed.
+ * An adaptive runtime never grows past ADAPTIVE_THREADS_PER_CORE subtree threads per core,
+ * even with maxThreads UNBOUNDED.
+ *
+ * An adaptive runtime measures how much of their time its threads spend blocked in
+ * LeafNode.getValue() and getArgs() compared to running on a CPU. By Little's law, keeping
+ * every core busy takes cores * (1 + blocked / running) threads, so a controller moves the
+ * limit of subtree threads towards that number a few times a second. The limit starts high,
+ * as if leaves were blocked most of the time, and the controller lowers it for circuits that
+ * compute; starting low would run blocking circuits nearly sequentially until the first
+ * adjustments. Its decisions are visible through getMetrics().
+ */
+public class SolverRuntime {
+    // Constant specifying the keep-alive time for threads in the pool
+    public static final long KEEP_ALIVE_TIME = 60L; // in milliseconds
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private static final int SHARED_THREADS_PER_CORE = 64;
+    private static final int SHARED_LEAVES_PER_CORE = 32;
+    // Initial limit of subtree threads of an adaptive runtime, per core, unless it has fewer:
+    // enough for leaves blocked 63 out of every 64 units of time
+    private static final int INITIAL_THREADS_PER_CORE = SHARED_THREADS_PER_CORE;
+    // Limits of root threads and of the subtree threads the adaptive controller may ask for, per core
+    private static final int ROOT_THREADS_PER_CORE = SHARED_THREADS_PER_CORE / 4;
+    private static final int ADAPTIVE_THREADS_PER_CORE = 4 * SHARED_THREADS_PER_CORE;
+    // Period of the adaptive controller
+    private static final long CONTROL_INTERVAL = 100L; // in milliseconds
+    // Fraction of the distance to the measured optimum covered by a single adjustment
+    private static final double CONTROL_GAIN = 0.5;
+    // Windows with less measured time than this say nothing about the workload
+    private static final long MIN_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static SolverRuntime shared;
+
+    private final int maxThreads;
+    private final ThreadPoolExecutor rootExecutor;
+    private final ThreadPoolExecutor executor;
+    private final int maxConcurrentLeaves;
+
+    // Time spent in leaves and getArgs() off the CPU and time spent running tasks on a CPU
+    private final LongAdder blockedNanos;
+    private final LongAdder cpuNanos;
+    // Adaptive controller, null in a runtime of fixed size
+    private final ScheduledThreadPoolExecutor controller;
+    private final int cores;
+    // Highest limit of subtree threads the controller may set
+    private final int threadLimit;
+    private long lastBlockedNanos;
+    private long lastCpuNanos;
+    private double smoothedThreads;
+    private volatile double blockingRatio;
+    private volatile long resizes;
+
+    // Leaf budget accounting, guarded by lock
+    private final ReentrantLock lock;
+    private final Condition leafReleased;
+    private int leavesInUse;
+    private int activeTenants;
+
+    public SolverRuntime(int maxThreads, int maxConcurrentLeaves) {
+        this(maxThreads, maxConcurrentLeaves, false, Executors.defaultThreadFactory());
+    }
+
+    private SolverRuntime(int maxThreads, int maxConcurrentLeaves, boolean adaptive, ThreadFactory threadFactory) {
+        if (maxThreads < 2 || maxConcurrentLeaves < 1) {
+            throw new IllegalArgumentException("At least two threads and one leaf call are required.");
+        }
+        this.maxThreads = maxThreads;
+        this.cores = Runtime.getRuntime().availableProcessors();
+        this.blockedNanos = new LongAdder();
+        this.cpuNanos = new LongAdder();
+        if (maxThreads == UNBOUNDED && !adaptive) {
+            this.executor = new ThreadPoolExecutor(0, UNBOUNDED,
+                    KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                    new SynchronousQueue<>(), threadFactory, SolverRuntime::saturated);
+            this.rootExecutor = this.executor;
+        } else {
+            // Roots have their own threads, so that limiting subtree threads never blocks solve()
+            // and a queue keeps their number fixed however large maxThreads is
+            int rootThreads = (int) Math.max(1, Math.min(maxThreads / 4, (long) cores * ROOT_THREADS_PER_CORE));
+            this.executor = newExecutor(0, maxThreads - rootThreads, new SynchronousQueue<>(), adaptive, threadFactory);
+            this.rootExecutor = newExecutor(rootThreads, rootThreads, new LinkedBlockingQueue<>(), adaptive, threadFactory);
+            this.rootExecutor.allowCoreThreadTimeOut(true);
+        }
+        this.maxConcurrentLeaves = maxConcurrentLeaves;
+        this.lock = new ReentrantLock();
+        this.leafReleased = lock.newCondition();
+        this.leavesInUse = 0;
+        this.activeTenants = 0;
+
+        this.blockingRatio = Double.NaN;
+        this.resizes = 0;
+        if (adaptive) {
+            this.threadLimit = (int) Math.min((long) cores * ADAPTIVE_THREADS_PER_CORE, executor.getMaximumPoolSize());
+            int initial = (int) Math.min((long) cores * INITIAL_THREADS_PER_CORE, threadLimit);
+            this.smoothedThreads = initial;
+            executor.setMaximumPoolSize(initial);
+            this.controller = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "solver-runtime-controller");
+                t.setDaemon(true);
+                return t;
+            });
+            controller.scheduleWithFixedDelay(this::adjust, CONTROL_INTERVAL, CONTROL_INTERVAL, TimeUnit.MILLISECONDS);
+        } else {
+            this.threadLimit = executor.getMaximumPoolSize();
+            this.controller = null;
+        }
+    }
+
+    /**
+     * Creates a runtime with at most maxThreads threads, which keeps only as many of them as
+     * the measured blocking of the circuits needs to keep every core busy.
+     */
+    public static SolverRuntime adaptive(int maxThreads, int maxConcurrentLeaves) {
+        return new SolverRuntime(maxThreads, maxConcurrentLeaves, true, Executors.defaultThreadFactory());
+    }
+
+    /** The process-wide runtime, sized by the number of cores; its threads are daemons. */
+    public static synchronized SolverRuntime shared() {
+        if (shared == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            AtomicInteger threadNumber = new AtomicInteger();
+            shared = new SolverRuntime(cores * SHARED_THREADS_PER_CORE, cores * SHARED_LEAVES_PER_CORE, true, r -> {
+                Thread t = new Thread(r, "solver-runtime-" + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return shared;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getMaxConcurrentLeaves() {
+        return maxConcurrentLeaves;
+    }
+
+    public int getPoolSize() {
+        return rootExecutor == executor ? executor.getPoolSize() : rootExecutor.getPoolSize() + executor.getPoolSize();
+    }
+
+    /** Measurements and current decision of the adaptive controller. */
+    public Metrics getMetrics() {
+        return new Metrics(controller != null, executor.getMaximumPoolSize(), getPoolSize(),
+                blockingRatio, blockedNanos.sum(), cpuNanos.sum(), resizes);
+    }
+
+    /**
+     * Snapshot of the controller: the current limit of subtree threads, the number of threads,
+     * the share of measured time spent blocked during the last period (NaN before the first
+     * measurement), the totals measured so far and the number of times the limit changed.
+     * A runtime of fixed size measures nothing.
+     */
+    public record Metrics(boolean adaptive, int threadLimit, int poolSize, double blockingRatio,
+                          long blockedNanos, long cpuNanos, long resizes) {
+    }
+
+    /** Interrupts every running computation of every attached handle and stops accepting new ones. */
+    public void shutdown() {
+        if (controller != null) controller.shutdownNow();
+        rootExecutor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    // Function to wait until every thread of a shut down runtime has exited
+    void awaitTermination() throws InterruptedException {
+        rootExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    // Executor for the evaluation of circuit roots
+    ThreadPoolExecutor rootExecutor() {
+        return rootExecutor;
+    }
+
+    // Executor for the evaluation and expansion of inner nodes
+    ThreadPoolExecutor executor() {
+        return executor;
+    }
+
+    Tenant attach() {
+        return new Tenant();
+    }
+
+    // Function to start measuring a call to a leaf or to getArgs(), returns the token for endBlocking()
+    long startBlocking() {
+        return controller == null ? 0 : System.nanoTime() - cpuTime();
+    }
+
+    // Function to account the time the call spent off the CPU, a leaf that computes does not block
+    void endBlocking(long token) {
+        if (controller != null) blockedNanos.add(System.nanoTime() - cpuTime() - token);
+    }
+
+    // Without per-thread CPU time the wall time is used, which makes the controller more cautious
+    private static long cpuTime() {
+        if (THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()) {
+            return THREADS.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    // Function to move the limit of subtree threads towards the one the last period asked for
+    private void adjust() {
+        long blocked = blockedNanos.sum();
+        long cpu = cpuNanos.sum();
+        long blockedDelta = blocked - lastBlockedNanos;
+        long cpuDelta = cpu - lastCpuNanos;
+        lastBlockedNanos = blocked;
+        lastCpuNanos = cpu;
+        if (blockedDelta + cpuDelta < MIN_SAMPLE_NANOS) return;
+
+        int limit = threadLimit;
+        double ratio = (double) blockedDelta / (blockedDelta + cpuDelta);
+        double wanted = cpuDelta == 0 ? limit : cores * (1.0 + (double) blockedDelta / cpuDelta);
+        blockingRatio = ratio;
+        smoothedThreads += CONTROL_GAIN * (Math.min(wanted, limit) - smoothedThreads);
+
+        int target = (int) Math.max(Math.min(cores, limit), Math.min(Math.round(smoothedThreads), limit));
+        if (target != executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(target);
+            resizes++;
+        }
+    }
+
+    private ThreadPoolExecutor newExecutor(int core, int max, BlockingQueue<Runnable> queue,
+                                           boolean metered, ThreadFactory threadFactory) {
+        if (!metered) {
+            return new ThreadPoolExecutor(core, max, KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                    queue, threadFactory, SolverRuntime::saturated);
+        }
+        return new MeteredExecutor(core, max, queue, threadFactory, cpuNanos);
+    }
+
+    // Rejection policy: leave argument evaluations to their gate and prefetches to the evaluation
+    // needing them, run anything else in the caller, refuse everything after shutdown
+    private static void saturated(Runnable r, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Solver runtime has been shut down.");
+        }
+        if (r instanceof ArgsEvaluation.Subtask task) {
+            task.reject();
+        } else if (!(r instanceof ArgsExpansion.Prefetch)) {
+            r.run();
+        }
+    }
+
+    // Pool adding the CPU time of every task it runs to a counter; tasks run by a caller count in the caller's task
+    private static class MeteredExecutor extends ThreadPoolExecutor {
+        private final ThreadLocal<long[]> started;
+        private final LongAdder cpuNanos;
+
+        private MeteredExecutor(int core, int max, BlockingQueue<Runnable> queue,
+                                ThreadFactory threadFactory, LongAdder cpuNanos) {
+            super(core, max, KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS, queue, threadFactory, SolverRuntime::saturated);
+            this.started = ThreadLocal.withInitial(() -> new long[1]);
+            this.cpuNanos = cpuNanos;
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            started.get()[0] = cpuTime();
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            cpuNanos.add(cpuTime() - started.get()[0]);
+        }
+    }
+
+    // Leaf budget and running tasks of a single solver handle
+    class Tenant {
+        private int leavesInUse = 0;
+        private int waiting = 0;
+        // Tasks of the handle running in some thread, and the number of threads waiting for them to exit
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile int awaitingIdle = 0;
+
+        SolverRuntime runtime() {
+            return SolverRuntime.this;
+        }
+
+        void enter() {
+            running.incrementAndGet();
+        }
+
+        void exit() {
+            if (running.decrementAndGet() == 0 && awaitingIdle > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        // Function to wait until no task of the handle runs; only meaningful once no new ones start
+        synchronized void awaitIdle() throws InterruptedException {
+            // Changed only under the monitor, so the increments do not race
+            awaitingIdle++;
+            try {
+                while (running.get() > 0) wait();
+            } finally {
+                awaitingIdle--;
+            }
+        }
+
+        // Function to wait until the handle may call one more leaf
+        void acquireLeaf() throws InterruptedException {
+            if (maxConcurrentLeaves == UNBOUNDED) return;
+
+            lock.lock();
+            try {
+                if (leavesInUse == 0 && waiting == 0) activeTenants++;
+                waiting++;
+                try {
+                    while (SolverRuntime.this.leavesInUse >= maxConcurrentLeaves || leavesInUse >= fairShare()) {
+                        leafReleased.await();
+                    }
+                } finally {
+                    waiting--;
+                }
+                leavesInUse++;
+                SolverRuntime.this.leavesInUse++;
+            } catch (InterruptedException e) {
+                leaveIfIdle();
+                throw e;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void releaseLeaf() {
+            if (maxConcurrentLeaves == UNBOUNDED) return;
+
+            lock.lock();
+            try {
+                leavesInUse--;
+                SolverRuntime.this.leavesInUse--;
+                leaveIfIdle();
+                // Waiters have different limits, so each of them has to recheck its own
+                leafReleased.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Budget share of every handle that currently calls or waits for leaves, rounded up
+        private int fairShare() {
+            return Math.max(1, (maxConcurrentLeaves + activeTenants - 1) / activeTenants);
+        }
+
+        private void leaveIfIdle() {
+            if (leavesInUse == 0 && waiting == 0) {
+                activeTenants--;
+                leafReleased.signalAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package cp2024.solution;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Framed, full-duplex connection between a DistributedCircuitSolver and a CircuitWorker.
+ *
+ * Every frame is: int length of the rest, byte opcode, long request id, payload. A SOLVE
+ * payload is a compact circuit image, a RESULT payload is a single byte, CANCEL has none.
+ * Reading and writing happen in two dedicated threads, so threads interrupted by the solvers
+ * never touch the socket, which would close it.
+ */
+class WireChannel implements AutoCloseable {
+    static final byte SOLVE = 1;
+    static final byte CANCEL = 2;
+    static final byte RESULT = 3;
+
+    static final byte FALSE = 0;
+    static final byte TRUE = 1;
+    // The worker could not compute the value, the coordinator has to do it itself
+    static final byte FAILED = 2;
+
+    private static final int FRAME_HEADER_BYTES = 1 + Long.BYTES;
+    private static final int MAX_FRAME_BYTES = 1 << 30;
+    private static final ByteBuffer[] POISON = new ByteBuffer[0];
+
+    interface Handler {
+        void frame(byte op, long id, ByteBuffer payload);
+
+        // Called once, when the connection is lost or closed
+        void closed();
+    }
+
+    private final SocketChannel channel;
+    private final Handler handler;
+    private final LinkedBlockingQueue<ByteBuffer[]> outgoing;
+    private final Thread reader;
+    private final Thread writer;
+    private volatile boolean open;
+
+    WireChannel(SocketChannel channel, Handler handler, String name) {
+        this.channel = channel;
+        this.handler = handler;
+        this.outgoing = new LinkedBlockingQueue<>();
+        this.open = true;
+        this.reader = new Thread(this::readLoop, name + "-reader");
+        this.writer = new Thread(this::writeLoop, name + "-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    // Function to queue a frame for sending; frames are sent in the order they were queued
+    void send(byte op, long id, ByteBuffer payload) throws IOException {
+        if (!open) throw new IOException("Connection closed.");
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + FRAME_HEADER_BYTES);
+        header.putInt(FRAME_HEADER_BYTES + payload.remaining()).put(op).putLong(id).flip();
+        outgoing.add(new ByteBuffer[] {header, payload.duplicate()});
+    }
+
+    void send(byte op, long id) throws IOException {
+        send(op, id, ByteBuffer.allocate(0));
+    }
+
+    @Override
+    public void close() {
+        if (!open) return;
+        open = false;
+        outgoing.add(POISON);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing more can be done with a broken connection
+        }
+    }
+
+    private void readLoop() {
+        try {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            while (true) {
+                length.clear();
+                if (!readFully(length)) break;
+                int size = length.getInt(0);
+                if (size < FRAME_HEADER_BYTES || size > MAX_FRAME_BYTES) {
+                    throw new IOException("Illegal frame length " + size);
+                }
+                ByteBuffer frame = ByteBuffer.allocate(size);
+                if (!readFully(frame)) throw new EOFException();
+                frame.flip();
+                byte op = frame.get();
+                long id = frame.getLong();
+                handler.frame(op, id, frame.slice());
+            }
+        } catch (IOException e) {
+            // The connection is lost, handled below like an orderly close
+        } finally {
+            close();
+            handler.closed();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteBuffer[] frame = outgoing.take();
+                if (frame == POISON) return;
+                while (frame[0].hasRemaining() || frame[1].hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (InterruptedException | IOException e) {
+            close();
+        }
+    }
+
+    // Reads until the buffer is full, returns false on end of stream before the first byte
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == 0) return false;
+                throw new EOFException();
+            }
+        }
+        return true;
+    }
+
+    /** Parses "tcp:host:port" or "unix:path". */
+    static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(Path.of(address.substring("unix:".length())));
+        }
+        if (address.startsWith("tcp:")) {
+            int colon = address.lastIndexOf(':');
+            if (colon > "tcp:".length()) {
+                String host = address.substring("tcp:".length(), colon);
+                return new InetSocketAddress(host, Integer.parseInt(address.substring(colon + 1)));
+            }
+        }
+        throw new IllegalArgumentException("Expected tcp:host:port or unix:path, got " + address);
+    }
+
+    static SocketChannel connect(SocketAddress address) throws IOException {
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        try {
+            channel.connect(address);
+            noDelay(channel);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Frames are small and latency-bound, so they should not wait for Nagle's algorithm
+    static void noDelay(SocketChannel channel) throws IOException {
+        if (channel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+    }
+
+    static ServerSocketChannel listen(SocketAddress address) throws IOException {
+        ServerSocketChannel server = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+        try {
+            server.bind(address);
+            return server;
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package cp2024.solution;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Coordinator side of a connection to a CircuitWorker, matching results to the requests awaiting them
+class WorkerConnection implements WireChannel.Handler, AutoCloseable {
+    private final ConcurrentHashMap<Long, Reply> pending;
+    private final AtomicLong nextId;
+    private final WireChannel wire;
+
+    WorkerConnection(SocketAddress address) throws IOException {
+        this.pending = new ConcurrentHashMap<>();
+        this.nextId = new AtomicLong();
+        this.wire = new WireChannel(WireChannel.connect(address), this, "circuit-coordinator-" + address);
+    }
+
+    boolean isOpen() {
+        return wire.isOpen();
+    }
+
+    /**
+     * Sends a compact circuit image to the worker and waits for its value.
+     * Returns null if the worker could not compute it. If the waiting thread is interrupted,
+     * the worker is told to cancel the computation.
+     */
+    Boolean solve(ByteBuffer image) throws InterruptedException {
+        long id = nextId.getAndIncrement();
+        Reply reply = new Reply();
+        pending.put(id, reply);
+        try {
+            wire.send(WireChannel.SOLVE, id, image);
+        } catch (IOException e) {
+            pending.remove(id);
+            return null;
+        }
+
+        try {
+            byte result = reply.await();
+            if (result == WireChannel.FAILED) return null;
+            return result == WireChannel.TRUE;
+        } catch (InterruptedException e) {
+            if (pending.remove(id) != null) {
+                try {
+                    wire.send(WireChannel.CANCEL, id);
+                } catch (IOException ex) {
+                    // A closed connection cancels everything anyway
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void frame(byte op, long id, ByteBuffer payload) {
+        if (op != WireChannel.RESULT || payload.remaining() != 1) {
+            wire.close();
+            return;
+        }
+        // A missing reply was cancelled in the meantime
+        Reply reply = pending.remove(id);
+        if (reply != null) reply.complete(payload.get(0));
+    }
+
+    @Override
+    public void closed() {
+        for (Long id : pending.keySet()) {
+            Reply reply = pending.remove(id);
+            if (reply != null) reply.complete(WireChannel.FAILED);
+        }
+    }
+
+    @Override
+    public void close() {
+        wire.close();
+    }
+
+    // Result of a single request, filled in by the reader thread
+    private static final class Reply {
+        private boolean done = false;
+        private byte result;
+
+        private synchronized void complete(byte result) {
+            this.result = result;
+            this.done = true;
+            notifyAll();
+        }
+
+        private synchronized byte await() throws InterruptedException {
+            while (!done) wait();
+            return result;
+        }
+    }
+}